@@ -0,0 +1,88 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>The difference between two versions of a dataset, keyed by yelp
+ * <code>id</code>: the restaurants that were inserted, the ones that were
+ * removed, and the ones whose data changed.</p>
+ */
+public final class DatasetDelta {
+
+    /**
+     * <p>A single restaurant whose data changed between versions.</p>
+     */
+    public static final class Update {
+
+        private final Restaurant myBefore, myAfter;
+
+        public Update(Restaurant before, Restaurant after) {
+            myBefore = before;
+            myAfter = after;
+        }
+
+        public Restaurant getBefore() {
+            return myBefore;
+        }
+
+        public Restaurant getAfter() {
+            return myAfter;
+        }
+    }
+
+    private final List<Restaurant> myInserted, myRemoved;
+    private final List<Update> myUpdated;
+
+    public DatasetDelta(List<Restaurant> inserted, List<Restaurant> removed,
+            List<Update> updated) {
+        myInserted = Collections.unmodifiableList(new ArrayList<>(inserted));
+        myRemoved = Collections.unmodifiableList(new ArrayList<>(removed));
+        myUpdated = Collections.unmodifiableList(new ArrayList<>(updated));
+    }
+
+    public List<Restaurant> getInserted() {
+        return myInserted;
+    }
+
+    public List<Restaurant> getRemoved() {
+        return myRemoved;
+    }
+
+    public List<Update> getUpdated() {
+        return myUpdated;
+    }
+
+    public boolean isEmpty() {
+        return myInserted.isEmpty() && myRemoved.isEmpty()
+                && myUpdated.isEmpty();
+    }
+
+    public int size() {
+        return myInserted.size() + myRemoved.size() + myUpdated.size();
+    }
+
+    @Override
+    public String toString() {
+        return "+" + myInserted.size() + " -" + myRemoved.size() + " ~"
+                + myUpdated.size();
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * <p>Watches a dataset file and re-parses it whenever it changes on disk.
+ * Bursts of events (editors and downloaders rarely write a file in one go)
+ * are coalesced into a single reload once the file has been quiet for a
+ * short while.</p>
+ */
+public class DatasetWatcher implements Closeable {
+
+    /**
+     * <p>Receives each freshly parsed version of the watched dataset. Called
+     * on the watcher's own thread.</p>
+     */
+    public interface Listener {
+
+        public void datasetChanged(List<Restaurant> restaurants);
+    }
+
+    private static final long QUIET_PERIOD_MILLIS = 500;
+
+    private final File myDataset;
+    private final RestaurantParser myParser;
+    private final RestaurantFilter myFilter;
+    private final Listener myListener;
+    private final WatchService myWatchService;
+
+    public DatasetWatcher(File dataset, RestaurantParser parser,
+            RestaurantFilter filter, Listener listener) throws IOException {
+        myDataset = dataset.getAbsoluteFile();
+        myParser = parser;
+        myFilter = filter;
+        myListener = listener;
+        myWatchService = FileSystems.getDefault().newWatchService();
+
+        myDataset.getParentFile().toPath().register(myWatchService,
+                ENTRY_CREATE, ENTRY_MODIFY);
+    }
+
+    public void start() {
+        Thread watcher = Threads.daemonFactory("dataset-watcher").newThread(
+                new Runnable() {
+                    @Override public void run() {
+                        watch();
+                    }
+                });
+        watcher.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        myWatchService.close();
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                if (!isDatasetEvent(myWatchService.take())) { continue; }
+
+                //wait for the writer to finish before reading
+                WatchKey key;
+                while ((key = myWatchService.poll(QUIET_PERIOD_MILLIS,
+                        TimeUnit.MILLISECONDS)) != null) {
+                    isDatasetEvent(key);
+                }
+                reload();
+            }
+        }
+        catch (ClosedWatchServiceException | InterruptedException e) {
+            //closed along with the sketch
+        }
+    }
+
+    /**
+     * <p>Returns whether the events of <code>key</code> may include a change
+     * to the dataset: one of them names it, or some were lost (an overflow)
+     * and might have.</p>
+     */
+    private boolean isDatasetEvent(WatchKey key) {
+        boolean result = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || myDataset.getName().equals(
+                    event.context().toString())) {
+                result = true;
+            }
+        }
+        key.reset();
+        return result;
+    }
+
+    private void reload() {
+        try {
+            myListener.datasetChanged(myParser.parse(myDataset, myFilter));
+        }
+        catch (RuntimeException e) {
+            //keep showing the current data until a readable version lands
+            System.err.println("Ignoring unreadable dataset " + myDataset
+                    + ": " + e.getMessage());
+        }
+    }
+}
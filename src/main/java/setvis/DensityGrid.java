@@ -0,0 +1,349 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import setvis.metrics.Meter;
+import setvis.metrics.Metrics;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Restaurant counts per category, binned over a square grid in
+ * {@link MercatorProjection} world coordinates and stored as summed-area
+ * tables, so that the number of restaurants inside <em>any</em> rectangle
+ * costs four lookups however large it is.</p>
+ *
+ * <p>Summed-area tables add up like the counts they summarize, so the
+ * table of a selection of several categories is just the sum of theirs; a
+ * toggle never goes back to the restaurants. (A restaurant in two selected
+ * categories counts twice.) Grids are immutable and built off the animation
+ * thread; a change to the restaurants is patched into a new grid sharing
+ * the tables it leaves alone (see {@link #with(DatasetDelta)}).</p>
+ */
+public final class DensityGrid {
+
+    /**
+     * <p>The number of cells along the longer side of the grid.</p>
+     */
+    public static final int RESOLUTION = 512;
+
+    private static final Meter HITS = Metrics.meter("density.cache.hits");
+    private static final Meter MISSES = Metrics.meter("density.cache.misses");
+
+    private final double myMinX, myMinY, myCellSize;
+    private final int myColumns, myRows;
+
+    private final int[] myAll;
+    private final Map<RestaurantCategory, int[]> myTables;
+
+    private final AtomicReference<Combination> myLastCombination =
+            new AtomicReference<>();
+
+    private DensityGrid(double minX, double minY, double cellSize,
+            int columns, int rows, int[] all,
+            Map<RestaurantCategory, int[]> tables) {
+        myMinX = minX;
+        myMinY = minY;
+        myCellSize = cellSize;
+        myColumns = columns;
+        myRows = rows;
+        myAll = all;
+        myTables = tables;
+    }
+
+    /**
+     * <p>Bins <code>restaurants</code> over a grid just covering them.</p>
+     *
+     * @param restaurants Some restaurants.
+     *
+     * @return The grid.
+     */
+    public static DensityGrid build(Collection<Restaurant> restaurants) {
+        double minX = 1, minY = 1, maxX = 0, maxY = 0;
+        for (Restaurant r : restaurants) {
+            double x = MercatorProjection.worldX(r.getLocation().getLon());
+            double y = MercatorProjection.worldY(r.getLocation().getLat());
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        if (restaurants.isEmpty()) {
+            minX = minY = 0;
+            maxX = maxY = 1;
+        }
+        //one spare cell on each side, and never a degenerate extent
+        double cellSize = Math.max(Math.max(maxX - minX, maxY - minY), 1e-9)
+                / (RESOLUTION - 2);
+        minX -= cellSize;
+        minY -= cellSize;
+        int columns = Math.min(RESOLUTION,
+                (int) Math.ceil((maxX - minX) / cellSize) + 2);
+        int rows = Math.min(RESOLUTION,
+                (int) Math.ceil((maxY - minY) / cellSize) + 2);
+
+        int[] all = new int[(columns + 1) * (rows + 1)];
+        Map<RestaurantCategory, int[]> tables = new HashMap<>();
+        for (Restaurant r : restaurants) {
+            int column = Math.min(columns - 1, (int) ((MercatorProjection
+                    .worldX(r.getLocation().getLon()) - minX) / cellSize));
+            int row = Math.min(rows - 1, (int) ((MercatorProjection
+                    .worldY(r.getLocation().getLat()) - minY) / cellSize));
+            int cell = (row + 1) * (columns + 1) + column + 1;
+
+            all[cell]++;
+            for (RestaurantCategory category : r.getCategories()) {
+                int[] table = tables.get(category);
+                if (table == null) {
+                    table = new int[all.length];
+                    tables.put(category, table);
+                }
+                table[cell]++;
+            }
+        }
+        integrate(all, columns, rows);
+        for (int[] table : tables.values()) {
+            integrate(table, columns, rows);
+        }
+        return new DensityGrid(minX, minY, cellSize, columns, rows, all,
+                tables);
+    }
+
+    /**
+     * <p>Returns a grid like this one with <code>delta</code> applied. Only
+     * the changed cells are visited before the tables of the affected
+     * categories are summed anew, so this costs the same however many
+     * restaurants are loaded.</p>
+     *
+     * @param delta A change to the binned restaurants.
+     *
+     * @return The patched grid, or <code>null</code> if a restaurant
+     *      <code>delta</code> brings lies outside this grid, which must then
+     *      be built anew.
+     */
+    public DensityGrid with(DatasetDelta delta) {
+        Map<RestaurantCategory, int[]> counts = new HashMap<>();
+        int[] all = new int[myAll.length];
+        boolean inside = true;
+
+        for (Restaurant r : delta.getRemoved()) {
+            inside &= count(r, -1, all, counts);
+        }
+        for (Restaurant r : delta.getInserted()) {
+            inside &= count(r, 1, all, counts);
+        }
+        for (DatasetDelta.Update u : delta.getUpdated()) {
+            if (!u.getBefore().isPlacedLike(u.getAfter())) {
+                inside &= count(u.getBefore(), -1, all, counts);
+                inside &= count(u.getAfter(), 1, all, counts);
+            }
+        }
+        if (!inside) {
+            return null;
+        }
+
+        Map<RestaurantCategory, int[]> tables = new HashMap<>(myTables);
+        for (Map.Entry<RestaurantCategory, int[]> e : counts.entrySet()) {
+            tables.put(e.getKey(), plus(myTables.get(e.getKey()),
+                    e.getValue()));
+        }
+        return new DensityGrid(myMinX, myMinY, myCellSize, myColumns, myRows,
+                plus(myAll, all), tables);
+    }
+
+    /**
+     * <p>Adds <code>amount</code> to the cell of <code>r</code> in
+     * <code>all</code> and in the counts of each of its categories.</p>
+     *
+     * @return Whether <code>r</code> lies inside this grid.
+     */
+    private boolean count(Restaurant r, int amount, int[] all,
+            Map<RestaurantCategory, int[]> counts) {
+        int column = (int) Math.floor((MercatorProjection.worldX(
+                r.getLocation().getLon()) - myMinX) / myCellSize);
+        int row = (int) Math.floor((MercatorProjection.worldY(
+                r.getLocation().getLat()) - myMinY) / myCellSize);
+        if (column < 0 || row < 0 || column >= myColumns || row >= myRows) {
+            return false;
+        }
+        int cell = (row + 1) * (myColumns + 1) + column + 1;
+
+        all[cell] += amount;
+        for (RestaurantCategory category : r.getCategories()) {
+            int[] table = counts.get(category);
+            if (table == null) {
+                table = new int[all.length];
+                counts.put(category, table);
+            }
+            table[cell] += amount;
+        }
+        return true;
+    }
+
+    /**
+     * <p>Returns <code>table</code> (which may be <code>null</code>, for
+     * none) plus the summed-area table of <code>counts</code>, which is
+     * integrated in place.</p>
+     */
+    private int[] plus(int[] table, int[] counts) {
+        integrate(counts, myColumns, myRows);
+        if (table != null) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += table[i];
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * <p>Turns per-cell counts (offset by one row and column) into a
+     * summed-area table, in place.</p>
+     */
+    private static void integrate(int[] table, int columns, int rows) {
+        int stride = columns + 1;
+        for (int row = 1; row <= rows; row++) {
+            int runningRow = 0;
+            for (int column = 1; column <= columns; column++) {
+                int i = row * stride + column;
+                runningRow += table[i];
+                table[i] = table[i - stride] + runningRow;
+            }
+        }
+    }
+
+    /**
+     * <p>Returns the summed-area table of <code>selection</code>: that of
+     * every restaurant if it is empty, otherwise the sum of its categories'
+     * tables. The most recent combination is remembered.</p>
+     *
+     * @param selection The active categories.
+     *
+     * @return A summed-area table, to pass to {@link #render}.
+     */
+    public int[] forSelection(Collection<RestaurantCategory> selection) {
+        if (selection.isEmpty()) {
+            return myAll;
+        }
+        Set<RestaurantCategory> key = new HashSet<>(selection);
+        Combination last = myLastCombination.get();
+        if (last != null && last.categories.equals(key)) {
+            HITS.mark();
+            return last.table;
+        }
+        MISSES.mark();
+
+        int[] result = new int[myAll.length];
+        for (RestaurantCategory category : key) {
+            int[] table = myTables.get(category);
+            if (table == null) { continue; }
+
+            for (int i = 0; i < result.length; i++) {
+                result[i] += table[i];
+            }
+        }
+        myLastCombination.set(new Combination(key, result));
+        return result;
+    }
+
+    /**
+     * <p>Renders the density of <code>table</code> over a viewport into
+     * <code>out</code>, a <code>width</code> by <code>height</code> array
+     * of <tt>ARGB</tt> pixels. Each pixel counts the restaurants within
+     * <code>radius</code> pixels of it (a box blur, for free) and is shaded
+     * in <code>rgb</code>, more opaque the denser, relative to the densest
+     * pixel in view.</p>
+     *
+     * @param table A table from {@link #forSelection}.
+     * @param left The world x coordinate of the viewport's left edge.
+     * @param top The world y coordinate of the viewport's top edge.
+     * @param right The world x coordinate of the viewport's right edge.
+     * @param bottom The world y coordinate of the viewport's bottom edge.
+     * @param radius The blur radius, in pixels.
+     * @param rgb The color to shade with.
+     * @param out Receives the pixels.
+     * @param width The width of <code>out</code>.
+     * @param height The height of <code>out</code>.
+     */
+    public void render(int[] table, double left, double top, double right,
+            double bottom, int radius, int rgb, int[] out, int width,
+            int height) {
+        double pixelWidth = (right - left) / width;
+        double pixelHeight = (bottom - top) / height;
+        int max = 0;
+
+        for (int py = 0; py < height; py++) {
+            int row0 = row(top + (py - radius) * pixelHeight);
+            int row1 = row(top + (py + radius + 1) * pixelHeight);
+            for (int px = 0; px < width; px++) {
+                int column0 = column(left + (px - radius) * pixelWidth);
+                int column1 = column(left + (px + radius + 1) * pixelWidth);
+
+                int count = sum(table, column0, row0, Math.max(column1,
+                        column0 + 1), Math.max(row1, row0 + 1));
+                out[py * width + px] = count;
+                max = Math.max(max, count);
+            }
+        }
+        rgb &= 0xFFFFFF;
+        for (int i = 0; i < width * height; i++) {
+            int alpha = max == 0 ? 0
+                    : (int) (220 * Math.sqrt((double) out[i] / max));
+            out[i] = (alpha << 24) | rgb;
+        }
+    }
+
+    /**
+     * <p>Returns the number of restaurants in cells
+     * <tt>[column0, column1) &times; [row0, row1)</tt>.</p>
+     */
+    private int sum(int[] table, int column0, int row0, int column1,
+            int row1) {
+        column1 = Math.min(column1, myColumns);
+        row1 = Math.min(row1, myRows);
+        if (column0 >= column1 || row0 >= row1) {
+            return 0;
+        }
+        int stride = myColumns + 1;
+        return table[row1 * stride + column1] - table[row0 * stride + column1]
+                - table[row1 * stride + column0] + table[row0 * stride
+                + column0];
+    }
+
+    private int column(double worldX) {
+        return clamp((worldX - myMinX) / myCellSize, myColumns);
+    }
+
+    private int row(double worldY) {
+        return clamp((worldY - myMinY) / myCellSize, myRows);
+    }
+
+    private static int clamp(double cell, int cells) {
+        return (int) Math.max(0, Math.min(cells, Math.floor(cell)));
+    }
+
+    private static final class Combination {
+        final Set<RestaurantCategory> categories;
+        final int[] table;
+
+        Combination(Set<RestaurantCategory> categories, int[] table) {
+            this.categories = categories;
+            this.table = table;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+/**
+ * <p>Batched Euclidean distances over planar coordinates held in parallel
+ * <code>float[]</code>s (see {@link PlanarProjection}).</p>
+ *
+ * <p>Nothing here allocates, and the batch methods are written as simple
+ * counted loops over primitive arrays with no branches or calls in the
+ * body, the shape the JIT's superword pass turns into SIMD code. Anything
+ * needing many distances (spanning trees, local search, clustering) should
+ * compute them a row at a time through {@link #distancesFrom}.</p>
+ */
+public class DistanceKernel {
+
+    public static float distance(float[] xs, float[] ys, int i, int j) {
+        float dx = xs[i] - xs[j];
+        float dy = ys[i] - ys[j];
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * <p>Writes the distance from <code>(x, y)</code> to each of the first
+     * <code>n</code> points into <code>out</code>.</p>
+     *
+     * @param xs The x coordinates of the points.
+     * @param ys The y coordinates of the points.
+     * @param n The number of points.
+     * @param x The x coordinate of the origin.
+     * @param y The y coordinate of the origin.
+     * @param out Receives the distances; at least <code>n</code> long.
+     */
+    public static void distancesFrom(float[] xs, float[] ys, int n, float x,
+            float y, float[] out) {
+        for (int j = 0; j < n; j++) {
+            float dx = xs[j] - x;
+            float dy = ys[j] - y;
+            out[j] = (float) Math.sqrt(dx * dx + dy * dy);
+        }
+    }
+
+    /**
+     * <p>Returns the length of the open path visiting the first
+     * <code>n</code> points in <code>order</code>.</p>
+     *
+     * @param xs The x coordinates of the points.
+     * @param ys The y coordinates of the points.
+     * @param order Indices into <code>xs</code> and <code>ys</code>.
+     * @param n The number of indices in <code>order</code> to visit.
+     *
+     * @return The length of the path.
+     */
+    public static double pathLength(float[] xs, float[] ys, int[] order,
+            int n) {
+        double result = 0;
+        for (int i = 1; i < n; i++) {
+            result += distance(xs, ys, order[i - 1], order[i]);
+        }
+        return result;
+    }
+
+    /**
+     * <p>Returns the length of the open path visiting the first
+     * <code>n</code> points in order.</p>
+     *
+     * @param xs The x coordinates of the points.
+     * @param ys The y coordinates of the points.
+     * @param n The number of points to visit.
+     *
+     * @return The length of the path.
+     */
+    public static double pathLength(float[] xs, float[] ys, int n) {
+        double result = 0;
+        for (int i = 1; i < n; i++) {
+            result += distance(xs, ys, i - 1, i);
+        }
+        return result;
+    }
+}
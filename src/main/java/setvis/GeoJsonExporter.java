@@ -0,0 +1,249 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>Writes LineSets as a GeoJSON <tt>FeatureCollection</tt>, for use in
+ * other GIS tools: each category's ordering becomes a
+ * <tt>LineString</tt> (or a <tt>Point</tt>, for a category of a single
+ * restaurant, as a <tt>LineString</tt> needs two positions) and each
+ * restaurant a <tt>Point</tt> listing the categories it belongs to (and so
+ * the paths it sits at the intersection of).</p>
+ *
+ * <pre>
+ *   { "type": "Feature",
+ *     "geometry": { "type": "LineString", "coordinates": [[lon, lat], ...] },
+ *     "properties": { "category": "american",
+ *                     "description": "restaurant type", "color": "#1b9e77",
+ *                     "restaurants": 31 } }
+ *   { "type": "Feature",
+ *     "geometry": { "type": "Point", "coordinates": [lon, lat] },
+ *     "properties": { "id": "...", "name": "...",
+ *                     "categories": ["american", "four", "small_count"] } }
+ * </pre>
+ *
+ * <p>Features are encoded straight into a fixed-size buffer that is drained
+ * into a file channel whenever it fills, so memory use does not grow with
+ * the dataset. The output is plain ASCII (anything else is escaped), one
+ * feature per line, and gzip-compressed if the file name ends in
+ * <tt>.gz</tt>.</p>
+ */
+public class GeoJsonExporter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final WritableByteChannel myChannel;
+    private final ByteBuffer myBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private boolean myFirstFeature = true;
+
+    /**
+     * <p>Creates (or truncates) <code>file</code> and starts the feature
+     * collection.</p>
+     *
+     * @param file Where to write.
+     *
+     * @throws IOException If <code>file</code> cannot be opened.
+     */
+    public GeoJsonExporter(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (file.getName().toLowerCase(Locale.ROOT).endsWith(".gz")) {
+            myChannel = Channels.newChannel(new GZIPOutputStream(
+                    Channels.newOutputStream(channel), BUFFER_SIZE));
+        }
+        else {
+            myChannel = channel;
+        }
+        raw("{\"type\":\"FeatureCollection\",\"features\":[");
+    }
+
+    /**
+     * <p>Writes every non-empty ordering in <code>store</code>, then every
+     * restaurant, to <code>file</code>.</p>
+     *
+     * @param store A loaded store, with orderings computed.
+     * @param file Where to write.
+     *
+     * @throws IOException If <code>file</code> cannot be written.
+     */
+    public static void export(RestaurantStore store, File file)
+            throws IOException {
+        try (GeoJsonExporter exporter = new GeoJsonExporter(file)) {
+            for (RestaurantCategory category : RestaurantCategories.all()) {
+                List<Restaurant> ordering = store.getOrdering(category);
+                if (!ordering.isEmpty()) {
+                    exporter.path(category, ordering);
+                }
+            }
+            for (Restaurant r : store.getRestaurants()) {
+                exporter.point(r, r.getCategories());
+            }
+        }
+    }
+
+    /**
+     * <p>Writes <code>ordering</code> as the <tt>LineString</tt> of
+     * <code>category</code>, or as its <tt>Point</tt> if it holds a single
+     * restaurant.</p>
+     *
+     * @param category A category.
+     * @param ordering Its restaurants, in path order.
+     *
+     * @throws IllegalArgumentException If <code>ordering</code> is empty.
+     * @throws IOException If the file cannot be written.
+     */
+    public void path(RestaurantCategory category, List<Restaurant> ordering)
+            throws IOException {
+        if (ordering.isEmpty()) {
+            throw new IllegalArgumentException("Empty ordering: " + category
+                    + ".");
+        }
+        if (ordering.size() == 1) {
+            beginFeature("Point");
+            coordinates(ordering.get(0));
+        }
+        else {
+            beginFeature("LineString");
+            raw("[");
+            for (int i = 0; i < ordering.size(); i++) {
+                if (i > 0) { raw(","); }
+                coordinates(ordering.get(i));
+            }
+            raw("]");
+        }
+        raw("},\"properties\":{\"category\":");
+        string(name(category));
+        raw(",\"description\":");
+        string(category.getCategoryDescription());
+        raw(",\"color\":");
+        string(String.format("#%06x", category.getAssignedColor()
+                & 0xFFFFFF));
+        raw(",\"restaurants\":" + ordering.size() + "}}");
+    }
+
+    /**
+     * <p>Writes <code>r</code> as a <tt>Point</tt>.</p>
+     *
+     * @param r A restaurant.
+     * @param memberships The categories to list it under.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public void point(Restaurant r, Collection<RestaurantCategory> memberships)
+            throws IOException {
+        beginFeature("Point");
+        coordinates(r);
+        raw("},\"properties\":{\"id\":");
+        string(r.getID());
+        raw(",\"name\":");
+        string(r.getName());
+        raw(",\"categories\":[");
+        boolean first = true;
+        for (RestaurantCategory category : memberships) {
+            if (!first) { raw(","); }
+            string(name(category));
+            first = false;
+        }
+        raw("]}}");
+    }
+
+    /**
+     * <p>Ends the feature collection, then flushes and closes the
+     * file.</p>
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    @Override public void close() throws IOException {
+        try {
+            raw("\n]}\n");
+            drain();
+        }
+        finally {
+            myChannel.close();
+        }
+    }
+
+    private void beginFeature(String geometry) throws IOException {
+        raw(myFirstFeature ? "\n" : ",\n");
+        myFirstFeature = false;
+        raw("{\"type\":\"Feature\",\"geometry\":{\"type\":\"" + geometry
+                + "\",\"coordinates\":");
+    }
+
+    private void coordinates(Restaurant r) throws IOException {
+        raw("[" + r.getLocation().getLon() + "," + r.getLocation().getLat()
+                + "]");
+    }
+
+    private static String name(RestaurantCategory category) {
+        return category.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * <p>Writes <code>s</code>, which must need no escaping.</p>
+     */
+    private void raw(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            if (!myBuffer.hasRemaining()) { drain(); }
+            myBuffer.put((byte) s.charAt(i));
+        }
+    }
+
+    /**
+     * <p>Writes <code>s</code> as a quoted <tt>JSON</tt> string, escaping
+     * quotes, backslashes, control characters and anything outside
+     * ASCII.</p>
+     */
+    private void string(String s) throws IOException {
+        raw("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                raw("\\" + c);
+            }
+            else if (c < 0x20 || c > 0x7E) {
+                raw(String.format("\\u%04x", (int) c));
+            }
+            else {
+                if (!myBuffer.hasRemaining()) { drain(); }
+                myBuffer.put((byte) c);
+            }
+        }
+        raw("\"");
+    }
+
+    private void drain() throws IOException {
+        myBuffer.flip();
+        while (myBuffer.hasRemaining()) {
+            myChannel.write(myBuffer);
+        }
+        myBuffer.clear();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>Static helpers for laying restaurants out along a Hilbert curve over
+ * {@link MercatorProjection} world coordinates. Restaurants that are close
+ * on the map end up close in the layout (the curve never jumps), so arrays
+ * built in this order are walked with good locality by anything spatial,
+ * and the layout itself is a reasonable tour of its restaurants.</p>
+ */
+public class HilbertCurve {
+
+    /**
+     * <p>Returns the position along the Hilbert curve of order
+     * <code>order</code> (a <code>2<sup>order</sup></code> cell square over
+     * the world) of the cell holding a point.</p>
+     *
+     * @param worldX A world x coordinate, in <tt>[0, 1]</tt>.
+     * @param worldY A world y coordinate, in <tt>[0, 1]</tt>.
+     * @param order The number of bits per axis, at most <code>31</code>.
+     *
+     * @return The position, in <tt>[0, 4<sup>order</sup>)</tt>.
+     */
+    public static long index(double worldX, double worldY, int order) {
+        long side = 1L << order;
+        long x = cell(worldX, side), y = cell(worldY, side);
+        long result = 0;
+
+        for (long s = side >>> 1; s > 0; s >>>= 1) {
+            long rx = (x & s) > 0 ? 1 : 0;
+            long ry = (y & s) > 0 ? 1 : 0;
+            result += s * s * ((3 * rx) ^ ry);
+
+            //rotate the quadrant so the curve stays continuous
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = side - 1 - x;
+                    y = side - 1 - y;
+                }
+                long t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * <p>Returns <code>restaurants</code> in the order the Hilbert curve
+     * visits them. Restaurants sharing a cell keep their relative
+     * order.</p>
+     *
+     * @param restaurants Some restaurants.
+     *
+     * @return A new, mutable list.
+     */
+    public static List<Restaurant> sort(Collection<Restaurant> restaurants) {
+        List<Restaurant> input = new ArrayList<>(restaurants);
+        int n = input.size();
+
+        //pack each position above the input index and sort the lot as longs
+        int indexBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(n));
+        int order = Math.min(31, (63 - indexBits) / 2);
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            Restaurant r = input.get(i);
+            keys[i] = index(MercatorProjection.worldX(r.getLocation().getLon()),
+                    MercatorProjection.worldY(r.getLocation().getLat()), order)
+                    << indexBits | i;
+        }
+        Arrays.sort(keys);
+
+        long mask = (1L << indexBits) - 1;
+        List<Restaurant> result = new ArrayList<>(n);
+        for (long key : keys) {
+            result.add(input.get((int) (key & mask)));
+        }
+        return result;
+    }
+
+    private static long cell(double world, long side) {
+        return Math.max(0, Math.min(side - 1, (long) (world * side)));
+    }
+}
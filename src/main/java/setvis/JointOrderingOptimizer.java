@@ -0,0 +1,404 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Improves the orderings of several active categories <em>together</em>,
+ * minimizing their total length plus a penalty for every place two curves
+ * (or two stretches of the same curve) cross.</p>
+ *
+ * <p>Each optimization runs a number of independent simulated annealing
+ * chains in parallel, each making 2-opt moves (reversing a stretch of one
+ * category's path) from the per-category orderings. Only the two edges at
+ * either end of a reversed stretch change, so a move is scored against the
+ * other paths' segments in linear time. Energies are only ever tracked
+ * relative to the starting orderings, so starting an optimization costs
+ * nothing quadratic. The best orderings found by any chain are handed to a
+ * {@link Listener} as they improve (at most every
+ * {@link #PUBLISH_INTERVAL} milliseconds) and once more when the time
+ * budget runs out.</p>
+ */
+public class JointOrderingOptimizer {
+
+    /**
+     * <p>Receives improved orderings from a {@link Run}. Called from the
+     * optimizer's own threads.</p>
+     */
+    public interface Listener {
+        void improved(Run run, Map<RestaurantCategory, List<Restaurant>>
+                orderings);
+    }
+
+    public static final long PUBLISH_INTERVAL = 250;
+
+    //how often (in moves) a chain checks the clock and reports its best
+    private static final int CHECK_INTERVAL = 512;
+
+    //a crossing costs as much as this many average-length edges
+    private static final double CROSSING_WEIGHT = 2;
+
+    //the final temperature, as a fraction of the starting one
+    private static final double COOLING = 1e-3;
+
+    private final ExecutorService myChains;
+    private final int myChainCount;
+    private final long myBudget;
+
+    /**
+     * <p>Creates an optimizer running <code>chains</code> annealing chains
+     * for <code>budgetMillis</code> milliseconds per optimization.</p>
+     *
+     * @param chains The number of chains (and threads).
+     * @param budgetMillis The time budget of each optimization.
+     */
+    public JointOrderingOptimizer(int chains, long budgetMillis) {
+        if (chains < 1 || budgetMillis < 1) {
+            throw new IllegalArgumentException("Need at least one chain and"
+                    + " a positive time budget.");
+        }
+        myChainCount = chains;
+        myBudget = budgetMillis;
+        myChains = Executors.newFixedThreadPool(chains,
+                Threads.daemonFactory("optimizer"));
+    }
+
+    /**
+     * <p>Starts jointly optimizing the active categories of
+     * <code>selection</code>, starting from their current orderings.</p>
+     *
+     * @param selection The selection to improve.
+     * @param listener Receives improved orderings of the active categories.
+     *
+     * @return A handle on the running optimization.
+     */
+    public Run optimize(SelectionSnapshot selection, Listener listener) {
+        Run result = new Run(new Problem(selection.getActiveSelections()),
+                listener);
+        for (int i = 0; i < myChainCount; i++) {
+            myChains.execute(result.newChain(i));
+        }
+        return result;
+    }
+
+    public void close() {
+        myChains.shutdownNow();
+    }
+
+    /**
+     * <p>The fixed part of an optimization: the restaurants of all active
+     * categories, indexed once and projected to the plane, and the
+     * orderings to start from.</p>
+     */
+    private static final class Problem {
+
+        private final List<RestaurantCategory> myCategories;
+        private final List<Restaurant> myRestaurants = new ArrayList<>();
+        private final int[][] myInitial;
+        private final float[] myXs, myYs;
+
+        private final double myCrossingPenalty, myStartTemperature;
+
+        Problem(Map<RestaurantCategory, List<Restaurant>> orderings) {
+            myCategories = new ArrayList<>(orderings.keySet());
+            myInitial = new int[myCategories.size()][];
+
+            Map<Restaurant, Integer> indices = new HashMap<>();
+            for (int c = 0; c < myCategories.size(); c++) {
+                List<Restaurant> ordering =
+                        orderings.get(myCategories.get(c));
+                myInitial[c] = new int[ordering.size()];
+
+                for (int i = 0; i < ordering.size(); i++) {
+                    Integer index = indices.get(ordering.get(i));
+                    if (index == null) {
+                        index = myRestaurants.size();
+                        indices.put(ordering.get(i), index);
+                        myRestaurants.add(ordering.get(i));
+                    }
+                    myInitial[c][i] = index;
+                }
+            }
+            myXs = new float[myRestaurants.size()];
+            myYs = new float[myRestaurants.size()];
+            PlanarProjection.around(myRestaurants).project(myRestaurants,
+                    myXs, myYs);
+
+            double length = 0;
+            int edges = 0;
+            for (int[] order : myInitial) {
+                length += DistanceKernel.pathLength(myXs, myYs, order,
+                        order.length);
+                edges += Math.max(0, order.length - 1);
+            }
+            double meanEdge = edges == 0 ? 0 : length / edges;
+            myCrossingPenalty = CROSSING_WEIGHT * meanEdge;
+            myStartTemperature = meanEdge;
+        }
+
+        float distance(int a, int b) {
+            return DistanceKernel.distance(myXs, myYs, a, b);
+        }
+
+        /**
+         * <p>Returns whether segments <code>ab</code> and <code>cd</code>
+         * cross properly. Segments meeting at a shared restaurant do
+         * not.</p>
+         */
+        boolean crosses(int a, int b, int c, int d) {
+            if (a == c || a == d || b == c || b == d) {
+                return false;
+            }
+            float o1 = orientation(a, b, c), o2 = orientation(a, b, d);
+            float o3 = orientation(c, d, a), o4 = orientation(c, d, b);
+            return ((o1 > 0 && o2 < 0) || (o1 < 0 && o2 > 0))
+                    && ((o3 > 0 && o4 < 0) || (o3 < 0 && o4 > 0));
+        }
+
+        private float orientation(int a, int b, int c) {
+            return (myXs[b] - myXs[a]) * (myYs[c] - myYs[a])
+                    - (myYs[b] - myYs[a]) * (myXs[c] - myXs[a]);
+        }
+
+        /**
+         * <p>Counts the segments of <code>orders</code> that
+         * <code>ab</code> crosses, leaving out segments <code>skipA</code>
+         * and <code>skipB</code> of path <code>path</code>.</p>
+         */
+        int crossings(int[][] orders, int a, int b, int path, int skipA,
+                int skipB) {
+            int result = 0;
+            for (int k = 0; k < orders.length; k++) {
+                int[] order = orders[k];
+                for (int s = 0; s + 1 < order.length; s++) {
+                    if (k == path && (s == skipA || s == skipB)) {
+                        continue;
+                    }
+                    if (crosses(a, b, order[s], order[s + 1])) {
+                        result++;
+                    }
+                }
+            }
+            return result;
+        }
+
+        Map<RestaurantCategory, List<Restaurant>> toOrderings(
+                int[][] orders) {
+            Map<RestaurantCategory, List<Restaurant>> result =
+                    new LinkedHashMap<>();
+            for (int c = 0; c < orders.length; c++) {
+                List<Restaurant> ordering = new ArrayList<>(orders[c].length);
+                for (int index : orders[c]) {
+                    ordering.add(myRestaurants.get(index));
+                }
+                result.put(myCategories.get(c), ordering);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * <p>A single optimization: its chains share the best orderings found
+     * so far and stop early once cancelled.</p>
+     */
+    public final class Run {
+
+        private final Problem myProblem;
+        private final Listener myListener;
+        private final long myStart = System.currentTimeMillis();
+
+        private final AtomicInteger myRunningChains = new AtomicInteger();
+        private volatile boolean myCancelled;
+
+        //energies are relative to the starting orderings, at 0
+        private int[][] myBest;
+        private double myBestEnergy;
+        private boolean myUnpublished;
+        private long myLastPublished;
+
+        private Run(Problem problem, Listener listener) {
+            myProblem = problem;
+            myListener = listener;
+            myBest = copy(problem.myInitial);
+            myLastPublished = myStart;
+        }
+
+        public void cancel() {
+            myCancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return myCancelled;
+        }
+
+        private Runnable newChain(final long seed) {
+            myRunningChains.incrementAndGet();
+            return new Runnable() {
+                @Override public void run() {
+                    try {
+                        anneal(new Random(myStart * 31 + seed));
+                    }
+                    finally {
+                        if (myRunningChains.decrementAndGet() == 0) {
+                            publish(true);
+                        }
+                    }
+                }
+            };
+        }
+
+        private void anneal(Random random) {
+            Problem p = myProblem;
+            int[][] orders = copy(p.myInitial);
+            double energy = 0;
+            double bestEnergy = energy;
+            int[][] best = null;
+
+            //pick paths in proportion to how many moves they allow
+            int[] cumulative = new int[orders.length];
+            int total = 0;
+            for (int c = 0; c < orders.length; c++) {
+                total += orders[c].length >= 3 ? orders[c].length : 0;
+                cumulative[c] = total;
+            }
+            if (total == 0) { return; }
+
+            double temperature = p.myStartTemperature;
+            long deadline = myStart + myBudget;
+
+            for (long move = 1; ; move++) {
+                if (move % CHECK_INTERVAL == 0) {
+                    long now = System.currentTimeMillis();
+                    if (myCancelled || now >= deadline) { break; }
+
+                    double progress = (double) (now - myStart) / myBudget;
+                    temperature = p.myStartTemperature
+                            * Math.pow(COOLING, progress);
+                    if (best != null) {
+                        offer(best, bestEnergy);
+                        best = null;
+                    }
+                }
+                int pick = random.nextInt(total), c = 0;
+                while (cumulative[c] <= pick) { c++; }
+                int[] order = orders[c];
+                int n = order.length;
+
+                int i = random.nextInt(n), j = random.nextInt(n);
+                if (i > j) { int t = i; i = j; j = t; }
+                if (i == j || (i == 0 && j == n - 1)) { continue; }
+
+                double delta = reversalDelta(orders, c, i, j);
+                if (delta <= 0 || random.nextDouble()
+                        < Math.exp(-delta / temperature)) {
+                    reverse(order, i, j);
+                    energy += delta;
+
+                    if (energy < bestEnergy - 1e-9) {
+                        bestEnergy = energy;
+                        best = copy(orders);
+                    }
+                }
+            }
+            if (best != null) {
+                offer(best, bestEnergy);
+            }
+        }
+
+        /**
+         * <p>Returns the change in energy of reversing positions
+         * <code>i</code> through <code>j</code> of path
+         * <code>c</code>.</p>
+         */
+        private double reversalDelta(int[][] orders, int c, int i, int j) {
+            Problem p = myProblem;
+            int[] order = orders[c];
+            boolean head = i > 0, tail = j < order.length - 1;
+
+            //segment s joins positions s and s + 1
+            int skipA = head ? i - 1 : -1, skipB = tail ? j : -1;
+            double length = 0;
+            int crossings = 0;
+
+            if (head) {
+                int a = order[i - 1];
+                length += p.distance(a, order[j]) - p.distance(a, order[i]);
+                crossings += p.crossings(orders, a, order[j], c, skipA, skipB)
+                        - p.crossings(orders, a, order[i], c, skipA, skipB);
+            }
+            if (tail) {
+                int b = order[j + 1];
+                length += p.distance(order[i], b) - p.distance(order[j], b);
+                crossings += p.crossings(orders, order[i], b, c, skipA, skipB)
+                        - p.crossings(orders, order[j], b, c, skipA, skipB);
+            }
+            if (head && tail) {
+                int a = order[i - 1], b = order[j + 1];
+                crossings += (p.crosses(a, order[j], order[i], b) ? 1 : 0)
+                        - (p.crosses(a, order[i], order[j], b) ? 1 : 0);
+            }
+            return length + p.myCrossingPenalty * crossings;
+        }
+
+        private void offer(int[][] orders, double energy) {
+            synchronized (this) {
+                if (energy < myBestEnergy - 1e-9) {
+                    myBest = orders;
+                    myBestEnergy = energy;
+                    myUnpublished = true;
+                }
+            }
+            publish(false);
+        }
+
+        private void publish(boolean force) {
+            Map<RestaurantCategory, List<Restaurant>> orderings;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (myCancelled || !myUnpublished || (!force
+                        && now - myLastPublished < PUBLISH_INTERVAL)) {
+                    return;
+                }
+                orderings = myProblem.toOrderings(myBest);
+                myUnpublished = false;
+                myLastPublished = now;
+            }
+            myListener.improved(this, orderings);
+        }
+    }
+
+    private static void reverse(int[] order, int i, int j) {
+        for (; i < j; i++, j--) {
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+    }
+
+    private static int[][] copy(int[][] orders) {
+        int[][] result = new int[orders.length][];
+        for (int c = 0; c < orders.length; c++) {
+            result[c] = orders[c].clone();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>The command line options understood by {@link Main} and handed on to
+ * the sketch.</p>
+ *
+ * <pre>
+ *   --dataset &lt;file&gt;   read restaurants from a file instead of the
+ *                      bundled resource; <tt>.ndjson</tt> and
+ *                      <tt>.jsonl</tt> files (optionally gzipped) hold
+ *                      one record per line and are read in parallel
+ *   --bbox &lt;s,w,n,e&gt;   only load restaurants inside this box
+ *   --categories &lt;a,b&gt; only load restaurants in one of these categories
+ *   --watch            reload the dataset whenever it changes on disk
+ *   --serve &lt;port&gt;     serve overlay tiles over HTTP instead of opening
+ *                      the sketch
+ *   --make-shards &lt;dir&gt; split the dataset into shards (see
+ *                      {@link ShardWriter}) and exit
+ *   --export &lt;file&gt;    write the computed LineSets as GeoJSON (see
+ *                      {@link GeoJsonExporter}) and exit
+ *   --shards &lt;index&gt;   load a sharded dataset lazily, as the viewport
+ *                      moves over it
+ *   --shard-budget &lt;n&gt;  the most restaurants to keep loaded from shards
+ *   --optimize &lt;ms&gt;    how long to jointly optimize the curves of several
+ *                      active categories; 0 turns this off, as does
+ *                      --replay
+ *   --tiles &lt;dir&gt;      draw the map from local <tt>{z}/{x}/{y}.png</tt>
+ *                      tiles instead of downloading them
+ *   --record &lt;file&gt;    record input and toggles to a session file
+ *   --replay &lt;file&gt;    replay a recorded session, report frame timings
+ *                      and exit
+ *   --frame-times &lt;csv&gt; also write each replayed frame's timings
+ *   --on-demand        only redraw when something on screen changes
+ *   --timeline         show a slider scrubbing through the restaurants'
+ *                      review history (see {@link TimeIndex})
+ *   --metrics &lt;port&gt;   serve the runtime metrics as plain text over
+ *                      HTTP, besides publishing them through JMX
+ * </pre>
+ */
+public class LaunchOptions {
+
+    private static final int DEFAULT_OPTIMIZE_BUDGET = 3000;
+
+    private File myDataset;
+    private RestaurantFilter myFilter = RestaurantFilter.ALL;
+    private boolean myWatch;
+    private int myServePort = -1;
+    private File myShardDirectory, myShardIndex, myExport;
+    private int myShardBudget = 20000;
+    //-1 until given: the default depends on whether a session is replayed
+    private int myOptimizeBudget = -1;
+    private File myTiles, myRecording, myReplay, myFrameTimes;
+    private int myMetricsPort = -1;
+    private boolean myOnDemand, myTimeline;
+
+    public static LaunchOptions parse(String[] args) {
+        LaunchOptions result = new LaunchOptions();
+
+        for (int i = 0; args != null && i < args.length; i++) {
+            switch (args[i]) {
+                case "--dataset":
+                    result.myDataset = new File(value(args, ++i));
+                    break;
+                case "--bbox":
+                    result.myFilter = bounds(result.myFilter, args, ++i);
+                    break;
+                case "--categories":
+                    result.myFilter = categories(result.myFilter, args, ++i);
+                    break;
+                case "--watch":
+                    result.myWatch = true;
+                    break;
+                case "--serve":
+                    result.myServePort = integer(args, ++i);
+                    break;
+                case "--make-shards":
+                    result.myShardDirectory = new File(value(args, ++i));
+                    break;
+                case "--export":
+                    result.myExport = new File(value(args, ++i));
+                    break;
+                case "--shards":
+                    result.myShardIndex = new File(value(args, ++i));
+                    break;
+                case "--shard-budget":
+                    result.myShardBudget = integer(args, ++i);
+                    break;
+                case "--optimize":
+                    result.myOptimizeBudget = Math.max(0, integer(args, ++i));
+                    break;
+                case "--tiles":
+                    result.myTiles = new File(value(args, ++i));
+                    break;
+                case "--record":
+                    result.myRecording = new File(value(args, ++i));
+                    break;
+                case "--replay":
+                    result.myReplay = new File(value(args, ++i));
+                    break;
+                case "--frame-times":
+                    result.myFrameTimes = new File(value(args, ++i));
+                    break;
+                case "--on-demand":
+                    result.myOnDemand = true;
+                    break;
+                case "--timeline":
+                    result.myTimeline = true;
+                    break;
+                case "--metrics":
+                    result.myMetricsPort = integer(args, ++i);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: "
+                            + args[i] + ".");
+            }
+        }
+        if (result.myWatch && result.myDataset == null) {
+            throw new IllegalArgumentException("--watch requires --dataset.");
+        }
+        if (result.myShardIndex != null && (result.myDataset != null
+                || result.isServing())) {
+            throw new IllegalArgumentException("--shards cannot be combined"
+                    + " with --dataset or --serve.");
+        }
+        if (result.myShardDirectory != null && result.myDataset != null
+                && NdjsonIngestor.accepts(result.myDataset)) {
+            throw new IllegalArgumentException("--make-shards needs a"
+                    + " dataset holding a single JSON array.");
+        }
+        if (result.myShardDirectory != null
+                && result.myFilter != RestaurantFilter.ALL) {
+            throw new IllegalArgumentException("--make-shards shards every"
+                    + " record; it cannot be combined with --bbox or"
+                    + " --categories.");
+        }
+        if (result.myExport != null && (result.myShardIndex != null
+                || result.myShardDirectory != null || result.isServing())) {
+            throw new IllegalArgumentException("--export cannot be combined"
+                    + " with --shards, --make-shards or --serve.");
+        }
+        if (result.myRecording != null && result.myReplay != null) {
+            throw new IllegalArgumentException("--record cannot be combined"
+                    + " with --replay.");
+        }
+        if (result.myTimeline && (result.myWatch
+                || result.myShardIndex != null)) {
+            throw new IllegalArgumentException("--timeline cannot be"
+                    + " combined with --watch or --shards.");
+        }
+        if (result.myOnDemand && result.myReplay != null) {
+            throw new IllegalArgumentException("--on-demand cannot be"
+                    + " combined with --replay, which times every frame.");
+        }
+        if (result.myReplay != null && result.myOptimizeBudget > 0) {
+            throw new IllegalArgumentException("--optimize cannot be"
+                    + " combined with --replay, whose frames must not"
+                    + " depend on timing.");
+        }
+        if (result.myOptimizeBudget < 0) {
+            result.myOptimizeBudget = result.myReplay != null
+                    ? 0 : DEFAULT_OPTIMIZE_BUDGET;
+        }
+        if (result.myFrameTimes != null && result.myReplay == null) {
+            throw new IllegalArgumentException("--frame-times requires"
+                    + " --replay.");
+        }
+        return result;
+    }
+
+    /**
+     * <p>Returns the dataset file to load, or <code>null</code> if the
+     * bundled resource should be used.</p>
+     *
+     * @return A dataset file.
+     */
+    public File getDataset() {
+        return myDataset;
+    }
+
+    /**
+     * <p>Returns which restaurants of the dataset to load.</p>
+     *
+     * @return A filter; {@link RestaurantFilter#ALL} unless restricted.
+     */
+    public RestaurantFilter getFilter() {
+        return myFilter;
+    }
+
+    public boolean isWatching() {
+        return myWatch;
+    }
+
+    public boolean isServing() {
+        return myServePort >= 0;
+    }
+
+    public int getServePort() {
+        return myServePort;
+    }
+
+    /**
+     * <p>Returns whether the sketch should stop its draw loop whenever the
+     * screen is idle.</p>
+     *
+     * @return Whether to render on demand.
+     */
+    public boolean isOnDemand() {
+        return myOnDemand;
+    }
+
+    /**
+     * <p>Returns whether the sketch should offer a slider that moves the
+     * dataset back and forth through its review history.</p>
+     *
+     * @return Whether to show the timeline.
+     */
+    public boolean isShowingTimeline() {
+        return myTimeline;
+    }
+
+    public boolean isServingMetrics() {
+        return myMetricsPort >= 0;
+    }
+
+    public int getMetricsPort() {
+        return myMetricsPort;
+    }
+
+    /**
+     * <p>Returns the file to export LineSets to, or <code>null</code>
+     * unless they should be exported.</p>
+     *
+     * @return A <tt>.geojson</tt> (or <tt>.geojson.gz</tt>) file.
+     */
+    public File getExport() {
+        return myExport;
+    }
+
+    /**
+     * <p>Returns the directory to write shards into, or <code>null</code>
+     * unless the dataset should be sharded.</p>
+     *
+     * @return A directory.
+     */
+    public File getShardDirectory() {
+        return myShardDirectory;
+    }
+
+    /**
+     * <p>Returns the index of a sharded dataset to load lazily, or
+     * <code>null</code> if the whole dataset is loaded up front.</p>
+     *
+     * @return A shard index.
+     */
+    public File getShardIndex() {
+        return myShardIndex;
+    }
+
+    public int getShardBudget() {
+        return myShardBudget;
+    }
+
+    /**
+     * <p>Returns the time budget, in milliseconds, of each joint
+     * optimization (see {@link JointOrderingOptimizer}), or <code>0</code>
+     * if the categories should keep their own orderings. Always
+     * <code>0</code> when replaying: the optimizer anneals on every core
+     * from a clock seed and publishes on a timer, which would change both
+     * the frames drawn and their timings.</p>
+     *
+     * @return A time budget.
+     */
+    public int getOptimizeBudget() {
+        return myOptimizeBudget;
+    }
+
+    /**
+     * <p>Returns the directory of local map tiles to draw, or
+     * <code>null</code> if tiles should be downloaded.</p>
+     *
+     * @return A tile directory.
+     */
+    public File getTiles() {
+        return myTiles;
+    }
+
+    /**
+     * <p>Returns the file to record the session into, or <code>null</code>
+     * unless recording.</p>
+     *
+     * @return A session file.
+     */
+    public File getRecording() {
+        return myRecording;
+    }
+
+    /**
+     * <p>Returns the recorded session to replay, or <code>null</code> for
+     * an interactive session.</p>
+     *
+     * @return A session file.
+     */
+    public File getReplay() {
+        return myReplay;
+    }
+
+    public File getFrameTimes() {
+        return myFrameTimes;
+    }
+
+    private static String value(String[] args, int i) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException("Missing value for "
+                    + args[i - 1] + ".");
+        }
+        return args[i];
+    }
+
+    private static RestaurantFilter bounds(RestaurantFilter filter,
+            String[] args, int i) {
+        String[] edges = value(args, i).split(",");
+        if (edges.length != 4) {
+            throw new IllegalArgumentException("Expected"
+                    + " south,west,north,east for --bbox.");
+        }
+        try {
+            return filter.within(Double.parseDouble(edges[0]),
+                    Double.parseDouble(edges[1]), Double.parseDouble(edges[2]),
+                    Double.parseDouble(edges[3]));
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected numbers for --bbox.");
+        }
+    }
+
+    private static RestaurantFilter categories(RestaurantFilter filter,
+            String[] args, int i) {
+        List<RestaurantCategory> result = new ArrayList<>();
+        for (String name : value(args, i).split(",")) {
+            result.add(RestaurantCategories.forName(name));
+        }
+        return filter.inAnyOf(result);
+    }
+
+    private static int integer(String[] args, int i) {
+        try {
+            return Integer.parseInt(value(args, i));
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected a number for "
+                    + args[i - 1] + ".");
+        }
+    }
+}
@@ -20,26 +20,41 @@ package setvis;
 import controlP5.Button;
 import controlP5.ControlP5;
 import de.fhpotsdam.unfolding.UnfoldingMap;
+import de.fhpotsdam.unfolding.events.MapEvent;
 import de.fhpotsdam.unfolding.geo.Location;
 import de.fhpotsdam.unfolding.marker.Marker;
 import de.fhpotsdam.unfolding.providers.Microsoft;
 import de.fhpotsdam.unfolding.utils.MapUtils;
 import de.fhpotsdam.unfolding.utils.ScreenPosition;
-import org.jgrapht.Graphs;
-import org.jgrapht.alg.KruskalMinimumSpanningTree;
-import org.jgrapht.graph.DefaultWeightedEdge;
-import org.jgrapht.graph.SimpleWeightedGraph;
-import org.jgrapht.traverse.DepthFirstIterator;
 import processing.core.PApplet;
-import processing.data.JSONArray;
-import processing.data.JSONObject;
+import processing.core.PImage;
+import processing.event.KeyEvent;
+import processing.event.MouseEvent;
 import setvis.Restaurant.RestaurantType;
 import setvis.Restaurant.RestaurantRating;
 import setvis.Restaurant.RestaurantReviewCount;
-import setvis.Restaurant.RestaurantBuilder;
 import setvis.gui.Gui;
-
+import setvis.metrics.Distribution;
+import setvis.metrics.Gauge;
+import setvis.metrics.Metrics;
+import setvis.replay.FrameTimings;
+import setvis.replay.InteractionLog;
+import setvis.replay.InteractionRecorder;
+import setvis.replay.InteractionReplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>The main driver for an interactive, lineset-based visualization of
@@ -49,11 +64,156 @@ import java.util.*;
 */
 public class LineSets extends PApplet {
 
-    private final Map<RestaurantCategory, List<Restaurant>> mySubCategories =
-            new HashMap<>();
+    private final RestaurantParser myParser = new RestaurantParser();
 
-    private final Map<RestaurantCategory, List<Restaurant>> myActiveSelections =
-            new HashMap<>();
+    /**
+     * <p>The loaded restaurants and category orderings. Written during
+     * {@link #setup()}, then only by {@link #mySelectionUpdater}.</p>
+     */
+    private final RestaurantStore myStore = new RestaurantStore();
+
+    /**
+     * <p>Dataset changes already applied to {@link #myStore} whose markers
+     * still need updating on the animation thread.</p>
+     */
+    private final Queue<DatasetDelta> myPendingDeltas =
+            new ConcurrentLinkedQueue<>();
+
+    private static final int SHARD_PREFETCH_RING = 1;
+
+    /**
+     * <p>The most markers added or removed per frame, so that a large
+     * dataset streams onto the map rather than stalling it.</p>
+     */
+    private static final int MARKER_BATCH = 500;
+
+    /**
+     * <p>Categories whose orderings became ready since the last frame, and
+     * whose buttons can be unlocked.</p>
+     */
+    private final Queue<RestaurantCategory> myReadyCategories =
+            new ConcurrentLinkedQueue<>();
+
+    private final StartupProgress myProgress = new StartupProgress();
+
+    /**
+     * <p>The density layer stands in for markers and curves when asked for
+     * (with the <tt>h</tt> key), or when zoomed out this far over more than
+     * {@link #DENSITY_AUTO_SIZE} restaurants.</p>
+     */
+    private static final int DENSITY_AUTO_ZOOM = 13;
+    private static final int DENSITY_AUTO_SIZE = 5000;
+
+    //screen pixels per density pixel, and the blur radius in density pixels
+    private static final int DENSITY_PIXEL = 4;
+    private static final int DENSITY_RADIUS = 3;
+
+    /**
+     * <p>Counts of the loaded restaurants, built by
+     * {@link #mySelectionUpdater} once they are loaded and patched whenever
+     * they change.</p>
+     */
+    private final AtomicReference<DensityGrid> myDensity =
+            new AtomicReference<>();
+
+    private boolean myDensityRequested;
+    private PImage myDensityImage;
+
+    /**
+     * <p>The names of the loaded restaurants, extended by
+     * {@link #mySelectionUpdater} whenever a change brings a name it does
+     * not hold. The animation thread searches it whenever the query or the
+     * markers change, and highlights up to {@link #SEARCH_RESULTS} matches
+     * in {@link #myMatches}.</p>
+     */
+    private volatile NameIndex myNames;
+    private NameIndex mySearchedNames;
+    private String myQuery = "";
+    private String myRecordedQuery = "";
+    private final List<Marker> myMatches = new ArrayList<>();
+
+    private static final int SEARCH_RESULTS = 10;
+
+    private static final Distribution FRAME_MICROS =
+            Metrics.distribution("frame.micros");
+    private static final Distribution OVERLAY_MICROS =
+            Metrics.distribution("frame.overlay.micros");
+
+    private static final int FRAME_RATE = 25;
+
+    /**
+     * <p>Trades the fidelity of curves and markers for draw time whenever
+     * frames overrun the budget set by {@link #FRAME_RATE}. Absent while
+     * replaying, so that replays of two builds draw the same frames.</p>
+     */
+    private QualityGovernor myGovernor;
+    private RenderQuality myQuality = RenderQuality.FULL;
+
+    /**
+     * <p>When rendering on demand (<tt>--on-demand</tt>) the draw loop is
+     * stopped and frames are only drawn when asked for with
+     * {@link #requestFrame()}; the loop only runs while the map is moving.
+     * Work that is still under way (tiles downloading, markers streaming
+     * in) asks for another frame this long after the last.</p>
+     */
+    private static final int REDRAW_DELAY = 40;
+
+    private ScheduledExecutorService myRedrawTimer;
+    private final AtomicBoolean myRedrawScheduled = new AtomicBoolean();
+
+    //whether a frame was asked for since the current one started
+    private final AtomicBoolean myDirty = new AtomicBoolean();
+
+    //the map's corners as of the last frame, to tell when it comes to rest
+    private Location myLastTopLeft, myLastBottomRight;
+
+    private Marker myHovered;
+    private boolean myWasOverControls;
+
+    /**
+     * <p>The review history, with <tt>--timeline</tt>. Built by
+     * {@link #mySelectionUpdater} once the orderings are ready; from then
+     * on, moving the slider queues the time it points at, and the updater
+     * moves the store there (skipping straight to the latest time queued)
+     * by applying only the changes in between.</p>
+     */
+    private volatile TimeIndex myTimeline;
+    private final AtomicLong myTimelineTarget = new AtomicLong();
+    private long myTimelineTime;
+    private boolean myTimelineShown;
+
+    private final DateFormat myTimeFormat = timeFormat();
+
+    private InteractionRecorder myRecorder;
+    private InteractionReplayer myReplayer;
+
+    private LaunchOptions myOptions;
+    private DatasetWatcher myWatcher;
+    private ShardedDataset myShards;
+
+    /**
+     * <p>The selection currently shown. Only ever replaced wholesale by
+     * {@link #mySelectionUpdater}; the draw loop reads it once per frame.</p>
+     */
+    private final AtomicReference<SelectionSnapshot> mySelection =
+            new AtomicReference<>(SelectionSnapshot.EMPTY);
+
+    /**
+     * <p>Applies button toggles (and any recomputation they require) in
+     * order, off the animation thread.</p>
+     */
+    private final ExecutorService mySelectionUpdater = Executors
+            .newSingleThreadExecutor(Threads.daemonFactory("selection"));
+
+    private SelectionSnapshot myAppliedSelection;
+
+    /**
+     * <p>Jointly reorders the curves of the active categories. The current
+     * {@link #myOptimization} is only touched on
+     * {@link #mySelectionUpdater}.</p>
+     */
+    private JointOrderingOptimizer myOptimizer;
+    private JointOrderingOptimizer.Run myOptimization;
 
     private final Map<Restaurant, RestaurantMarker> myMarkers =
             new HashMap<>();
@@ -70,21 +230,59 @@ public class LineSets extends PApplet {
     @Override public void setup() {
         size(700, 600);
         plotX1 = 0; plotY1 = 0; plotX2 = width; plotY2 = 60;
+        myOptions = LaunchOptions.parse(args);
+
+        if (myOptions.getOptimizeBudget() > 0) {
+            myOptimizer = new JointOrderingOptimizer(
+                    Runtime.getRuntime().availableProcessors(),
+                    myOptions.getOptimizeBudget());
+        }
+
+        //A sharded region is loaded lazily, as the viewport moves over it
+        if (myOptions.getShardIndex() != null) {
+            openShards();
+        }
 
         //Configures the map: chooses provider, sets panning restrictions, etc
         createMapBackground();
 
         //Sets up the controlP5 buttons
         createCategoryControlPanels();
+        Gui.createSearchField(myControls, plotX1 + 585, plotY1 + 35, 100);
+        if (myOptions.isShowingTimeline()) {
+            Gui.createTimelineSlider(myControls, 250, height - 30,
+                    width - 320);
+        }
 
-        //Parses the data and creates our own Restaurant objects
-        preprocessInput();
+        //Records this session, or replays a recorded one
+        if (myOptions.getRecording() != null
+                || myOptions.getReplay() != null) {
+            openSession();
+        }
+
+        if (myReplayer == null) {
+            myGovernor = new QualityGovernor(1000000 / FRAME_RATE);
+        }
+
+        //Everything else happens in the background, while the map renders
+        if (myShards == null) {
+            loadInBackground();
+        }
+        else {
+            myProgress.finish();
+        }
 
-        //Uses a 2-opt TSP heuristic to find a reasonable restaurant ordering
-        computeAndUpdateRestaurantOrderings();
+        //Picks up later edits to the dataset without a restart
+        if (myOptions.isWatching()) {
+            watchDataset();
+        }
+        registerMetrics();
 
-        //Adds restaurant markers to the unfolding background map
-        createRestaurantMarkers();
+        if (myOptions.isOnDemand()) {
+            myRedrawTimer = Executors.newSingleThreadScheduledExecutor(
+                    Threads.daemonFactory("redraw"));
+            noLoop();
+        }
     }
 
     /**
@@ -92,27 +290,617 @@ public class LineSets extends PApplet {
      * execution of {@link #setup()}.</p>
      */
     @Override public void draw() {
+        long start = System.nanoTime();
+        myDirty.set(false);
+        if (myRecorder != null && isLoaded()) {
+            myRecorder.start();
+        }
+        if (myReplayer != null) {
+            replayFrame();
+        }
+        if (myShards != null) {
+            myShards.viewportChanged(myBackgroundMap.getTopLeftBorder(),
+                    myBackgroundMap.getBottomRightBorder());
+        }
+        boolean markersChanged = applyPendingDeltas();
+        unlockReadyCategories();
+        showTimeline();
+        updateSearch(markersChanged);
+        SelectionSnapshot selection = mySelection.get();
+        applySelectionToMarkers(selection);
+
+        boolean density = isDensityShown();
+        if (density) {
+            myBackgroundMap.getDefaultMarkerManager().disableDrawing();
+        }
+        else {
+            myBackgroundMap.getDefaultMarkerManager().enableDrawing();
+        }
         myBackgroundMap.draw();
-        drawActiveCurves();
-        drawRestaurantMarkers();    //Re-draw the markers on top of curves
+
+        long overlayStart = System.nanoTime();
+        if (density) {
+            drawDensity(selection);
+        }
+        else {
+            drawActiveCurves(selection);
+            drawRestaurantMarkers();    //Re-draw the markers on top of curves
+        }
+        long overlay = (System.nanoTime() - overlayStart) / 1000;
         drawCategoryPanels();
+        drawStartupProgress();
+        long frame = (System.nanoTime() - start) / 1000;
+        FRAME_MICROS.record(frame);
+        OVERLAY_MICROS.record(overlay);
+
+        //quality has no bearing on the density layer
+        if (myGovernor != null && !density) {
+            setQuality(myGovernor.frame(frame, overlay));
+        }
+
+        if (myRedrawTimer != null) {
+            scheduleNextFrame();
+        }
+
+        if (myReplayer != null && myReplayer.isStarted()) {
+            myReplayer.getTimings().endFrame();
+            if (myReplayer.isFinished(frameCount)) {
+                finishReplay();
+            }
+        }
+    }
+
+    /**
+     * <p>Asks for a frame to be drawn, from any thread. Does nothing unless
+     * rendering on demand, as every frame is drawn anyway.</p>
+     */
+    private void requestFrame() {
+        myDirty.set(true);
+        redraw();
+    }
+
+    /**
+     * <p>Decides, at the end of a frame drawn on demand, what comes next:
+     * the loop keeps running while the map is moving, and stops once it
+     * comes to rest. Unfolding has no callback for arriving tiles, so
+     * while tiles are pending (or markers still need adding, or startup
+     * is under way) another frame is asked for shortly; the same goes for
+     * a frame asked for while this one was drawn, as Processing would
+     * drop that request.</p>
+     */
+    private void scheduleNextFrame() {
+        if (isMapMoving()) {
+            loop();
+        }
+        else {
+            noLoop();
+        }
+        if (myDirty.get() || !myBackgroundMap.allTilesLoaded()
+                || !myPendingDeltas.isEmpty() || !myProgress.isFinished()) {
+            if (myRedrawScheduled.compareAndSet(false, true)) {
+                myRedrawTimer.schedule(new Runnable() {
+                    @Override public void run() {
+                        myRedrawScheduled.set(false);
+                        requestFrame();
+                    }
+                }, REDRAW_DELAY, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * <p>Returns whether the map moved (by more than half a pixel at either
+     * corner) since the last time this was called.</p>
+     */
+    private boolean isMapMoving() {
+        boolean result = myLastTopLeft == null
+                || !isAt(myLastTopLeft, 0, 0)
+                || !isAt(myLastBottomRight, myBackgroundMap.getWidth(),
+                        myBackgroundMap.getHeight());
+        myLastTopLeft = myBackgroundMap.getTopLeftBorder();
+        myLastBottomRight = myBackgroundMap.getBottomRightBorder();
+        return result;
     }
 
+    private boolean isAt(Location location, float x, float y) {
+        ScreenPosition p = myBackgroundMap.getScreenPosition(location);
+        return abs(p.x - x) < 0.5f && abs(p.y - y) < 0.5f;
+    }
+
+    /**
+     * <p>Called by Unfolding whenever the map is panned or zoomed by the
+     * mouse or keyboard. Runs the loop while the map tweens to its new
+     * position.</p>
+     *
+     * @param event The manipulation.
+     */
+    public void mapChanged(MapEvent event) {
+        if (myRedrawTimer != null) {
+            loop();
+        }
+    }
+
+    /**
+     * <p>Publishes the state of the sketch through {@link Metrics}. The
+     * gauges are only read when metrics are reported, so the animation
+     * thread does no extra work for them.</p>
+     */
+    private void registerMetrics() {
+        Metrics.gauge("frame.rate", new Gauge() {
+            @Override public double value() {
+                return frameRate;
+            }
+        });
+        Metrics.gauge("selection.active", new Gauge() {
+            @Override public double value() {
+                return mySelection.get().getActiveSelections().size();
+            }
+        });
+        Metrics.gauge("store.restaurants", new Gauge() {
+            @Override public double value() {
+                return myStore.size();
+            }
+        });
+        Metrics.gauge("quality.level", new Gauge() {
+            @Override public double value() {
+                return myQuality.ordinal();
+            }
+        });
+        Metrics.gauge("markers.count", new Gauge() {
+            @Override public double value() {
+                return myMarkers.size();    //a slightly stale size is fine
+            }
+        });
+    }
+
+    @Override public void dispose() {
+        mySelectionUpdater.shutdownNow();
+        if (myRecorder != null) {
+            myRecorder.close();
+        }
+        if (myOptimizer != null) {
+            myOptimizer.close();
+        }
+        if (myRedrawTimer != null) {
+            myRedrawTimer.shutdownNow();
+        }
+        if (myShards != null) {
+            myShards.close();
+        }
+        if (myWatcher != null) {
+            try {
+                myWatcher.close();
+            }
+            catch (IOException e) {
+                //nothing left to clean up
+            }
+        }
+        super.dispose();
+    }
+
+    /**
+     * <p>Pushes the intersections of a newly published
+     * <code>selection</code> into the markers. Runs on the animation thread,
+     * so markers only ever change between frames.</p>
+     *
+     * @param selection The snapshot about to be drawn.
+     */
+    private void applySelectionToMarkers(SelectionSnapshot selection) {
+        if (selection == myAppliedSelection) { return; }
+
+        for (Map.Entry<Restaurant, RestaurantMarker> e : myMarkers.entrySet()) {
+            e.getValue().setIntersections(
+                    selection.getIntersections(e.getKey()));
+        }
+        myAppliedSelection = selection;
+    }
+
+    /**
+     * <p>Parses the dataset, then orders each category, on
+     * {@link #mySelectionUpdater}. Markers stream onto the map as soon as
+     * the restaurants are loaded, and each category's button unlocks once
+     * its ordering is ready; a toggle queued in between runs as soon as the
+     * ordering ahead of it finishes.</p>
+     */
+    private void loadInBackground() {
+        for (RestaurantCategory category : RestaurantCategories.all()) {
+            Gui.setCategoryButtonLocked(myControls, category, true);
+        }
+        mySelectionUpdater.execute(new Runnable() {
+            @Override public void run() {
+                try {
+                    myProgress.begin("Reading restaurants", 0);
+                    preprocessInput();
+                    rebuildDensity();
+                    rebuildNames();
+                }
+                catch (RuntimeException e) {
+                    System.err.println("Unable to load restaurants: " + e);
+                    myProgress.fail("Unable to load restaurants");
+                    requestFrame();
+                    return;
+                }
+                createRestaurantMarkers();
+                computeAndUpdateRestaurantOrderings();
+            }
+        });
+    }
+
+    /**
+     * <p>Queues markers for every loaded restaurant, in batches of
+     * {@link #MARKER_BATCH}.</p>
+     */
     private void createRestaurantMarkers() {
-        Set<Restaurant> allRestaurants = new HashSet<>();
-        for (List<Restaurant> restaurants : mySubCategories.values()) {
-            allRestaurants.addAll(restaurants);
+        List<Restaurant> restaurants = myStore.getRestaurants();
+        List<Restaurant> none = Collections.emptyList();
+
+        for (int i = 0; i < restaurants.size(); i += MARKER_BATCH) {
+            List<Restaurant> batch = restaurants.subList(i,
+                    Math.min(restaurants.size(), i + MARKER_BATCH));
+            myPendingDeltas.add(new DatasetDelta(new ArrayList<>(batch), none,
+                    Collections.<DatasetDelta.Update>emptyList()));
+        }
+        requestFrame();
+    }
+
+    private void addRestaurantMarker(Restaurant e) {
+        RestaurantMarker marker = new RestaurantMarker(e);
+        marker.setStrokeWeight(1);
+        marker.setRadius(7);
+        marker.setColor(175);
+        marker.setHighlightColor(0xFFF2003C);
+        marker.setDetailed(myQuality.hasDetailedMarkers());
+        myBackgroundMap.addMarker(marker);
+        myMarkers.put(e, marker);
+    }
+
+    private void removeRestaurantMarker(Restaurant e) {
+        RestaurantMarker marker = myMarkers.remove(e);
+        if (marker != null) {
+            myBackgroundMap.getDefaultMarkerManager().removeMarker(marker);
+        }
+    }
+
+    /**
+     * <p>Brings the markers in line with any dataset changes applied since
+     * the last frame.</p>
+     */
+    private boolean applyPendingDeltas() {
+        DatasetDelta delta;
+        int applied = 0;
+        while (applied < MARKER_BATCH
+                && (delta = myPendingDeltas.poll()) != null) {
+            applied += delta.size();
+            for (Restaurant e : delta.getRemoved()) {
+                removeRestaurantMarker(e);
+            }
+            for (DatasetDelta.Update u : delta.getUpdated()) {
+                removeRestaurantMarker(u.getBefore());
+                addRestaurantMarker(u.getAfter());
+            }
+            for (Restaurant e : delta.getInserted()) {
+                addRestaurantMarker(e);
+            }
+            //new markers need their intersections
+            myAppliedSelection = null;
+        }
+        return applied > 0;
+    }
+
+    /**
+     * <p>Starts watching the dataset given on the command line. Each new
+     * version is diffed against {@link #myStore} and only the difference is
+     * applied, on {@link #mySelectionUpdater}, while rendering carries
+     * on.</p>
+     */
+    private void watchDataset() {
+        try {
+            myWatcher = new DatasetWatcher(myOptions.getDataset(), myParser,
+                    myOptions.getFilter(),
+                    new DatasetWatcher.Listener() {
+                        @Override public void datasetChanged(
+                                List<Restaurant> restaurants) {
+                            scheduleDatasetUpdate(restaurants);
+                        }
+                    });
+            myWatcher.start();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to watch dataset: "
+                    + myOptions.getDataset() + ".", e);
+        }
+    }
+
+    private void scheduleDatasetUpdate(final List<Restaurant> restaurants) {
+        mySelectionUpdater.execute(new Runnable() {
+            @Override public void run() {
+                applyDelta(myStore.diff(restaurants));
+            }
+        });
+    }
+
+    private void scheduleDelta(final DatasetDelta delta) {
+        mySelectionUpdater.execute(new Runnable() {
+            @Override public void run() {
+                applyDelta(delta);
+            }
+        });
+    }
+
+    /**
+     * <p>Applies <code>delta</code> to {@link #myStore}, republishes the
+     * selection if any active category changed, and queues the marker
+     * changes for the animation thread. Only runs on
+     * {@link #mySelectionUpdater}.</p>
+     *
+     * @param delta A change to the loaded restaurants.
+     */
+    private void applyDelta(DatasetDelta delta) {
+        if (delta.isEmpty()) { return; }
+
+        Set<RestaurantCategory> changed = myStore.apply(delta);
+        myPendingDeltas.add(delta);
+        patchDensity(delta);
+        indexNames(delta);
+        requestFrame();
+
+        SelectionSnapshot next = mySelection.get();
+        boolean reordered = false;
+        for (RestaurantCategory category : changed) {
+            if (next.isActive(category)) {
+                next = next.with(category, myStore.getOrdering(category));
+                reordered = true;
+            }
+        }
+        publishSelection(next);
+        if (reordered) {
+            optimizeSelection(next);
         }
+    }
 
-        for (Restaurant e : allRestaurants) {
-            RestaurantMarker marker = new RestaurantMarker(e);
-            marker.setStrokeWeight(1);
-            marker.setRadius(7);
-            marker.setColor(175);
-            marker.setHighlightColor(0xFFF2003C);
-            myBackgroundMap.addMarker(marker);
-            myMarkers.put(e, marker);
+    /**
+     * <p>Simplifies the paths of <code>selection</code> for every zoom level,
+     * then swaps it in for the draw loop. Only runs on
+     * {@link #mySelectionUpdater}.</p>
+     *
+     * @param selection The new selection.
+     */
+    private void publishSelection(SelectionSnapshot selection) {
+        DensityGrid density = myDensity.get();
+        if (density != null) {
+            density.forSelection(selection.getActiveSelections().keySet());
         }
+        mySelection.set(selection.precomputePaths());
+        requestFrame();
+    }
+
+    /**
+     * <p>Re-bins the loaded restaurants for the density layer. Only runs on
+     * {@link #mySelectionUpdater}.</p>
+     */
+    private void rebuildDensity() {
+        publishDensity(DensityGrid.build(myStore.getRestaurants()));
+    }
+
+    /**
+     * <p>Patches <code>delta</code>, just applied to {@link #myStore}, into
+     * the density layer, re-binning everything only if it brings a
+     * restaurant outside the grid. Only runs on
+     * {@link #mySelectionUpdater}.</p>
+     *
+     * @param delta A change to the loaded restaurants.
+     */
+    private void patchDensity(DatasetDelta delta) {
+        DensityGrid density = myDensity.get();
+        DensityGrid patched = density == null ? null : density.with(delta);
+        if (patched == null) {
+            rebuildDensity();
+        }
+        else {
+            publishDensity(patched);
+        }
+    }
+
+    private void publishDensity(DensityGrid density) {
+        density.forSelection(mySelection.get().getActiveSelections()
+                .keySet());
+        myDensity.set(density);
+    }
+
+    private boolean isDensityShown() {
+        if (myDensity.get() == null) {
+            return false;
+        }
+        return myDensityRequested
+                || (myBackgroundMap.getZoomLevel() <= DENSITY_AUTO_ZOOM
+                        && myStore.size() > DENSITY_AUTO_SIZE);
+    }
+
+    /**
+     * <p>Shades the map by how many restaurants of the active categories
+     * (or of all categories, if none is active) are nearby, in the color of
+     * the only active category or the highlight color otherwise. Costs the
+     * same however many restaurants are loaded or in view.</p>
+     *
+     * @param selection The snapshot being drawn this frame.
+     */
+    private void drawDensity(SelectionSnapshot selection) {
+        DensityGrid density = myDensity.get();
+        float mapWidth = myBackgroundMap.getWidth();
+        float mapHeight = myBackgroundMap.getHeight();
+        if (myDensityImage == null) {
+            myDensityImage = createImage(ceil(mapWidth / DENSITY_PIXEL),
+                    ceil(mapHeight / DENSITY_PIXEL), ARGB);
+        }
+        Set<RestaurantCategory> active =
+                selection.getActiveSelections().keySet();
+        int rgb = active.size() == 1
+                ? active.iterator().next().getAssignedColor() : 0xFFF2003C;
+
+        Location topLeft = myBackgroundMap.getTopLeftBorder();
+        Location bottomRight = myBackgroundMap.getBottomRightBorder();
+        myDensityImage.loadPixels();
+        density.render(density.forSelection(active),
+                MercatorProjection.worldX(topLeft.getLon()),
+                MercatorProjection.worldY(topLeft.getLat()),
+                MercatorProjection.worldX(bottomRight.getLon()),
+                MercatorProjection.worldY(bottomRight.getLat()),
+                DENSITY_RADIUS, rgb, myDensityImage.pixels,
+                myDensityImage.width, myDensityImage.height);
+        myDensityImage.updatePixels();
+        image(myDensityImage, 0, 0, mapWidth, mapHeight);
+    }
+
+    @Override public void keyPressed() {
+        if (Gui.isSearchFocused(myControls)) {
+            //the field only sees the key after this, so search next frame
+            requestFrame();
+        }
+        else if (key == 'h') {
+            myDensityRequested = !myDensityRequested;
+            requestFrame();
+        }
+    }
+
+    /**
+     * <p>Abandons any joint optimization under way and, if two or more
+     * categories are active in <code>selection</code>, starts a new one.
+     * Each improvement replaces the orderings of the selection then current,
+     * unless it has moved on since. Only runs on
+     * {@link #mySelectionUpdater}.</p>
+     *
+     * @param selection The newly published selection.
+     */
+    private void optimizeSelection(SelectionSnapshot selection) {
+        if (myOptimization != null) {
+            myOptimization.cancel();
+            myOptimization = null;
+        }
+        if (myOptimizer == null
+                || selection.getActiveSelections().size() < 2) {
+            return;
+        }
+        myOptimization = myOptimizer.optimize(selection,
+                new JointOrderingOptimizer.Listener() {
+                    @Override public void improved(
+                            final JointOrderingOptimizer.Run run,
+                            final Map<RestaurantCategory, List<Restaurant>>
+                                    orderings) {
+                        mySelectionUpdater.execute(new Runnable() {
+                            @Override public void run() {
+                                if (run != myOptimization) { return; }
+
+                                SelectionSnapshot next = mySelection.get();
+                                for (Map.Entry<RestaurantCategory,
+                                        List<Restaurant>> e : orderings
+                                        .entrySet()) {
+                                    next = next.with(e.getKey(), e.getValue());
+                                }
+                                publishSelection(next);
+                            }
+                        });
+                    }
+                });
+    }
+
+    /**
+     * <p>Opens the sharded dataset given on the command line. Shards are
+     * loaded as the viewport moves over them and flow in through
+     * {@link #applyDelta(DatasetDelta)}.</p>
+     */
+    private void openShards() {
+        myShards = new ShardedDataset(myOptions.getShardIndex(), myParser,
+                myOptions.getShardBudget(), SHARD_PREFETCH_RING,
+                new ShardedDataset.Listener() {
+                    @Override public void shardsChanged(DatasetDelta delta) {
+                        scheduleDelta(delta);
+                    }
+                });
+    }
+
+    /**
+     * <p>Starts recording the session, or loads the session to replay,
+     * given on the command line.</p>
+     */
+    private void openSession() {
+        File file = myOptions.getRecording() != null
+                ? myOptions.getRecording() : myOptions.getReplay();
+        try {
+            if (myOptions.getRecording() != null) {
+                myRecorder = new InteractionRecorder(this, myControls, file);
+            }
+            else {
+                myReplayer = new InteractionReplayer(file);
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to open session: " + file
+                    + ".", e);
+        }
+    }
+
+    /**
+     * <p>Returns whether the dataset is loaded and on the map, from which
+     * point recorded sessions are timed.</p>
+     *
+     * @return Whether startup is over.
+     */
+    private boolean isLoaded() {
+        return myProgress.isFinished() && myPendingDeltas.isEmpty();
+    }
+
+    /**
+     * <p>Feeds the sketch the recorded input due this frame, exactly as if
+     * it had come from the mouse, keyboard and buttons.</p>
+     */
+    private void replayFrame() {
+        if (!myReplayer.isStarted()) {
+            if (!isLoaded()) { return; }
+            myReplayer.start(frameCount);
+        }
+        myReplayer.getTimings().beginFrame();
+
+        for (InteractionLog.Entry e : myReplayer.due(frameCount)) {
+            switch (e.getKind()) {
+                case MOUSE:
+                    handleMouseEvent((MouseEvent) e.toEvent(this));
+                    break;
+                case KEY:
+                    handleKeyEvent((KeyEvent) e.toEvent(this));
+                    break;
+                case TOGGLE:
+                    Gui.setCategoryButtonOn(myControls, e.getCategory(),
+                            e.isOn());
+                    break;
+                case SEARCH:
+                    Gui.setSearchText(myControls, e.getText());
+                    if (e.isSubmitted()) {
+                        search(e.getText());
+                    }
+                    break;
+                case TIMELINE:
+                    Gui.setTimelineValue(myControls, e.getValue());
+                    timeline(e.getValue());
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void finishReplay() {
+        FrameTimings timings = myReplayer.getTimings();
+        timings.summarize(System.out);
+
+        if (myOptions.getFrameTimes() != null) {
+            try {
+                timings.write(myOptions.getFrameTimes());
+            }
+            catch (IOException e) {
+                System.err.println("Unable to write frame timings: " + e);
+            }
+        }
+        exit();
     }
 
     /**
@@ -120,11 +908,19 @@ public class LineSets extends PApplet {
      * panning boundaries for the background map.</p>
      */
     private void createMapBackground() {
-        myBackgroundMap = new UnfoldingMap(this, new Microsoft.RoadProvider());
-
-        Location defaultLocation = new Location(47.626, -122.337);
-        myBackgroundMap.zoomAndPanTo(12, defaultLocation);
-        myBackgroundMap.setPanningRestriction(defaultLocation, 4);
+        myBackgroundMap = new UnfoldingMap(this, myOptions.getTiles() == null
+                ? new Microsoft.RoadProvider()
+                : new LocalTileProvider(myOptions.getTiles()));
+
+        if (myShards == null) {
+            Location defaultLocation = new Location(47.626, -122.337);
+            myBackgroundMap.zoomAndPanTo(12, defaultLocation);
+            myBackgroundMap.setPanningRestriction(defaultLocation, 4);
+        }
+        else {
+            //a whole region: start at its center and let the user roam
+            myBackgroundMap.zoomAndPanTo(13, myShards.getCenter());
+        }
         myBackgroundMap.setZoomRange(13, 30);
         myBackgroundMap.setBackgroundColor(0);
 
@@ -142,22 +938,51 @@ public class LineSets extends PApplet {
         for (Marker marker : myBackgroundMap.getMarkers()) {
             marker.setSelected(false);
         }
+        for (Marker marker : myMatches) {
+            marker.setSelected(true);
+        }
 
         Marker marker = myBackgroundMap.getFirstHitMarker(mouseX, mouseY);
         if (marker != null) {
             marker.setSelected(true);
         }
+
+        //only the hovered marker, or a button under the mouse, can change
+        boolean overControls = myControls.isMouseOver();
+        if (marker != myHovered || overControls || myWasOverControls) {
+            requestFrame();
+        }
+        myHovered = marker;
+        myWasOverControls = overControls;
+    }
+
+    @Override public void mousePressed() {
+        requestFrame();
+    }
+
+    @Override public void mouseReleased() {
+        requestFrame();
     }
 
     /**
-     * <p>Draws a smooth curve through all subcategories maintained by
-     * <code>myActiveSelections</code>.</p>
+     * <p>Draws a smooth curve through all subcategories active in
+     * <code>selection</code>, using each path's simplification for the
+     * current zoom level (or a coarser one, and possibly straight segments,
+     * as {@link #myQuality} demands).</p>
+     *
+     * @param selection The snapshot being drawn this frame.
      */
-    private void drawActiveCurves() {
+    private void drawActiveCurves(SelectionSnapshot selection) {
+        int zoom = myBackgroundMap.getZoomLevel() - myQuality.getZoomOffset();
+        boolean curved = myQuality.getCurveDetail() > 0;
+        if (curved) {
+            curveDetail(myQuality.getCurveDetail());
+        }
 
-        for (Map.Entry<RestaurantCategory, List<Restaurant>> e : myActiveSelections
-                .entrySet()) {
-            List<Restaurant> curRestaurants = e.getValue();
+        for (RestaurantCategory category : selection.getActiveSelections()
+                .keySet()) {
+            List<Restaurant> curRestaurants =
+                    selection.getPath(category).forZoom(zoom);
 
             if (curRestaurants != null && !curRestaurants.isEmpty()) {
                 ScreenPosition first = toScreenPosition(curRestaurants.get(0));
@@ -166,14 +991,22 @@ public class LineSets extends PApplet {
 
                 beginShape();
                 noFill();
-                stroke(e.getKey().getAssignedColor());
-                strokeWeight(7);
-                curveVertex(first.x, first.y);
-
-                for (Restaurant r : curRestaurants) {
-                    curveVertex(toScreenPosition(r).x, toScreenPosition(r).y);
+                stroke(category.getAssignedColor());
+                strokeWeight(myQuality.getCurveWeight());
+                if (curved) {
+                    curveVertex(first.x, first.y);
+
+                    for (Restaurant r : curRestaurants) {
+                        curveVertex(toScreenPosition(r).x,
+                                toScreenPosition(r).y);
+                    }
+                    curveVertex(last.x, last.y);
+                }
+                else {
+                    for (Restaurant r : curRestaurants) {
+                        vertex(toScreenPosition(r).x, toScreenPosition(r).y);
+                    }
                 }
-                curveVertex(last.x, last.y);
                 endShape();
             }
         }
@@ -188,50 +1021,220 @@ public class LineSets extends PApplet {
     }
 
     /**
-     * <p>Computes, for each category, a 2-opt ordering of the contained
-     * restaurants.</p>
+     * <p>Computes, for each category, an ordering of the contained
+     * restaurants. Each category is a task of its own on
+     * {@link #mySelectionUpdater}, so toggles of categories already ordered
+     * are not held up behind the rest.</p>
      */
     private void computeAndUpdateRestaurantOrderings() {
-        for (Map.Entry<RestaurantCategory, List<Restaurant>> e : mySubCategories
-                .entrySet()) {
-            computeAndUpdateRestaurantOrderings(e.getKey());
+        List<RestaurantCategory> categories = RestaurantCategories.all();
+        myProgress.begin("Ordering categories", categories.size());
+
+        for (final RestaurantCategory category : categories) {
+            mySelectionUpdater.execute(new Runnable() {
+                @Override public void run() {
+                    myStore.computeOrdering(category);
+                    myReadyCategories.add(category);
+                    myProgress.advance(1);
+                    requestFrame();
+                }
+            });
         }
+        mySelectionUpdater.execute(new Runnable() {
+            @Override public void run() {
+                myProgress.finish();
+                if (myOptions.isShowingTimeline()) {
+                    TimeIndex timeline = TimeIndex.build(
+                            myStore.getRestaurants());
+                    myTimelineTime = timeline.getEnd();
+                    myTimeline = timeline;
+                }
+                requestFrame();
+            }
+        });
     }
 
-    private void computeAndUpdateRestaurantOrderings(RestaurantCategory category) {
-        SimpleWeightedGraph<Restaurant, DefaultWeightedEdge> g =
-                new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+    private void showTimeline() {
+        TimeIndex timeline = myTimeline;
+        if (myTimelineShown || timeline == null) { return; }
+
+        Gui.showTimelineSlider(myControls, timeline.getStart(),
+                timeline.getEnd(), formatTime(timeline.getEnd()));
+        myTimelineShown = true;
+    }
 
-        Graphs.addAllVertices(g, mySubCategories.get(category));
+    // Invoked by the slider created in Gui.createTimelineSlider(..)
+    public void timeline(float value) {
+        TimeIndex timeline = myTimeline;
+        if (timeline == null) { return; }
+        if (myRecorder != null) {
+            myRecorder.scrubbed(value);
+        }
 
-        //build a complete graph
-        for (Restaurant r : mySubCategories.get(category)) {
-            for (Restaurant e : mySubCategories.get(category)) {
-                if (!e.equals(r)) {
-                    g.addEdge(r, e);
-                    g.setEdgeWeight(g.getEdge(r, e),
-                            r.getLocation().getDistance(e.getLocation()));
+        //floats are too coarse for seconds, so the ends snap to the ends
+        long time = (long) value;
+        if (value >= timeline.getEnd()) {
+            time = timeline.getEnd();
+        }
+        else if (value <= timeline.getStart()) {
+            time = timeline.getStart();
+        }
+        Gui.setTimelineLabel(myControls, formatTime(time));
+        myTimelineTarget.set(time);
+        requestFrame();
+
+        mySelectionUpdater.execute(new Runnable() {
+            @Override public void run() {
+                long target = myTimelineTarget.get();
+                if (target == myTimelineTime) { return; }
+
+                DatasetDelta delta = myTimeline.between(myTimelineTime,
+                        target);
+                myTimelineTime = target;
+                if (!delta.isEmpty()) {
+                    applyDelta(delta);
                 }
             }
+        });
+    }
+
+    private String formatTime(long seconds) {
+        return myTimeFormat.format(new Date(seconds * 1000));
+    }
+
+    private static DateFormat timeFormat() {
+        DateFormat result = new SimpleDateFormat("d MMM yyyy", Locale.ROOT);
+        result.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return result;
+    }
+
+    private void rebuildNames() {
+        myNames = NameIndex.build(myStore.getRestaurants());
+    }
+
+    /**
+     * <p>Adds the names <code>delta</code> brings to {@link #myNames}, if
+     * it does not hold them already (as when scrubbing through time).</p>
+     */
+    private void indexNames(DatasetDelta delta) {
+        NameIndex names = myNames;
+        if (names == null) {
+            rebuildNames();
+            return;
         }
-        KruskalMinimumSpanningTree<Restaurant, DefaultWeightedEdge> mst =
-                new KruskalMinimumSpanningTree<>(g);
+        List<Restaurant> unindexed = new ArrayList<>();
+        for (Restaurant r : delta.getInserted()) {
+            if (!names.contains(r)) { unindexed.add(r); }
+        }
+        for (DatasetDelta.Update u : delta.getUpdated()) {
+            if (!names.contains(u.getAfter())) { unindexed.add(u.getAfter()); }
+        }
+        if (!unindexed.isEmpty()) {
+            myNames = names.with(unindexed, myStore);
+        }
+    }
 
-        SimpleWeightedGraph<Restaurant, DefaultWeightedEdge> subgraph =
-                new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
+    /**
+     * <p>Highlights the markers of the restaurants best matching the text
+     * in the search field, if it, the index or the markers changed since
+     * the last frame.</p>
+     *
+     * @param markersChanged Whether markers were added or removed.
+     */
+    private void updateSearch(boolean markersChanged) {
+        NameIndex names = myNames;
+        String query = Gui.getSearchText(myControls);
+        if (myRecorder != null && !query.equals(myRecordedQuery)) {
+            myRecorder.searched(query, false);
+            myRecordedQuery = query;
+        }
+        if (names == null || (!markersChanged && names == mySearchedNames
+                && query.equals(myQuery))) {
+            return;
+        }
+        mySearchedNames = names;
+        myQuery = query;
+
+        for (Marker marker : myMatches) {
+            marker.setSelected(marker == myHovered);
+        }
+        myMatches.clear();
+        for (Restaurant r : names.search(query, SEARCH_RESULTS, myStore)) {
+            RestaurantMarker marker = myMarkers.get(r);
+            if (marker != null) {
+                marker.setSelected(true);
+                myMatches.add(marker);
+            }
+        }
+    }
+
+    // Invoked by the field created in Gui.createSearchField(..) on enter
+    public void search(String text) {
+        if (myRecorder != null) {
+            myRecorder.searched(text, true);
+        }
+        if (!myMatches.isEmpty()) {
+            myBackgroundMap.panTo(myMatches.get(0).getLocation());
+            requestFrame();
+        }
+    }
 
-        for (DefaultWeightedEdge e : mst.getMinimumSpanningTreeEdgeSet()) {
-            Graphs.addEdgeWithVertices(subgraph, g.getEdgeSource(e),
-                    g.getEdgeTarget(e));
+    /**
+     * <p>Switches to drawing at <code>quality</code> from the next frame
+     * on.</p>
+     *
+     * @param quality The quality the governor settled on.
+     */
+    private void setQuality(RenderQuality quality) {
+        if (quality == myQuality) { return; }
+
+        if (quality.hasDetailedMarkers() != myQuality.hasDetailedMarkers()) {
+            for (RestaurantMarker marker : myMarkers.values()) {
+                marker.setDetailed(quality.hasDetailedMarkers());
+            }
+        }
+        myQuality = quality;
+        requestFrame();
+    }
+
+    private void unlockReadyCategories() {
+        RestaurantCategory category;
+        while ((category = myReadyCategories.poll()) != null) {
+            Gui.setCategoryButtonLocked(myControls, category, false);
         }
+    }
+
+    /**
+     * <p>Draws what the background startup work is doing, and how far
+     * along it is, in the bottom left corner until it is done.</p>
+     */
+    private void drawStartupProgress() {
+        if (myProgress.isFinished()) { return; }
 
-        DepthFirstIterator<Restaurant, DefaultWeightedEdge> treeIter =
-                new DepthFirstIterator<>(subgraph);
+        float x = plotX1 + 10, y = height - 60;
+        noStroke();
+        fill(130, 130, 130, 210);
+        rect(x, y, 230, 50, 6);
+
+        fill(240);
+        text(myProgress.getStage(), x + 7, y + 15);
+        if (myProgress.isFailed()) { return; }
 
-        mySubCategories.get(category).clear();
+        text(myMarkers.size() + " of " + myStore.size()
+                + " restaurants placed", x + 7, y + 30);
 
-        while (treeIter.hasNext()) {
-            mySubCategories.get(category).add(treeIter.next());
+        fill(0xFF414141);
+        rect(x + 7, y + 37, 216, 6, 3);
+        fill(240);
+        float fraction = myProgress.getFraction();
+        if (fraction < 0) {
+            //unknown length: sweep back and forth
+            float t = (frameCount % 50) / 49f;
+            rect(x + 7 + 176 * (t < 0.5f ? 2 * t : 2 - 2 * t), y + 37, 40,
+                    6, 3);
+        }
+        else {
+            rect(x + 7, y + 37, 216 * fraction, 6, 3);
         }
     }
 
@@ -253,12 +1256,17 @@ public class LineSets extends PApplet {
         rect(plotX1 + 390, plotY1 + 10, 180, plotY2 - 5, 6);
         fill(240);
         text("Review Count", plotX1 + 395, plotY1 + 25);
+
+        fill(130, 130, 130, 210);
+        rect(plotX1 + 580, plotY1 + 10, 110, plotY2 - 5, 6);
+        fill(240);
+        text("Search", plotX1 + 585, plotY1 + 25);
     }
 
     public void createCategoryControlPanels(){
 
         myControls = new ControlP5(this, createFont("Helvetica-Bold", 8));
-        frameRate(25);
+        frameRate(FRAME_RATE);
 
         Gui.createRestaurantReviewCountButtons(myControls, plotX1, plotY1);
         Gui.createRestaurantTypeButtons(myControls, plotX1, plotY1);
@@ -328,160 +1336,46 @@ public class LineSets extends PApplet {
                 RestaurantReviewCount.LARGE_COUNT);
     }
 
-    private void updateActiveSelection(String name, RestaurantCategory category) {
-
-        if (myActiveSelections.get(category) == null) {
-            myActiveSelections.put(category, new LinkedList<Restaurant>());
-        }
-
-        if (myControls.get(Button.class, name).getBooleanValue()) {
-            List<Restaurant> selected = mySubCategories.get(category);
-            myActiveSelections.get(category).addAll(selected);
-
-            for (Restaurant e : myActiveSelections.get(category)) {
-                myMarkers.get(e).addIntersection(category);
-            }
-        }
-        else {
-            for (Restaurant e : myActiveSelections.get(category)) {
-                myMarkers.get(e).removeIntersection(category);
-            }
-            myActiveSelections.get(category).clear();
-        }
-    }
-
-    private void preprocessInput() {
-        JSONArray rawData = loadJSONArray("yelp_restaurants_categorized_full.json");
-        Set<String> seen = new HashSet<>();
-
-        for (int i = 0; i < rawData.size(); i++) {
-            JSONObject o = rawData.getJSONObject(i);
-            JSONObject coord = o.getJSONObject("location")
-                    .getJSONObject("coordinate");
-
-            sanityCheckRestaurant(seen, o.getString("id"));
-
-            RestaurantBuilder restaurant =
-                    new RestaurantBuilder(o.getString("name"))
-                        .id(o.getString("id"))
-                        .type(getType(o, o.getJSONArray("categories")))
-                        .rating(getRating(o.getDouble("rating")))
-                        .reviewCount(getReviewCt(o.getDouble("review_count")))
-                        .location(coord.getFloat("latitude"),
-                                coord.getFloat("longitude"));
-
-            Restaurant complete = restaurant.build();
-            addToAppropriateSets(complete, complete.getType(),
-                    complete.getRating(), complete.getReviewCount());
-        }
-    }
-
-    /**
-     * <p>Adds an {@link Restaurant} <code>r</code> to the appropriate slot in
-     * the entry map. If <code>e</code> is first, initialize the slot.</p>
-     *
-     * @param e An instance of {@link Restaurant}.
-     */
-    private void addToAppropriateSets(Restaurant e, RestaurantCategory... categories) {
-        addToAppropriateSets(e, Arrays.asList(categories));
-    }
-
-    private void addToAppropriateSets(Restaurant e, List<RestaurantCategory> categories) {
-        for (RestaurantCategory category : categories) {
-            if (mySubCategories.get(category) == null) {
-                mySubCategories.put(category, new LinkedList<Restaurant>());
-            }
-            else {
-                mySubCategories.get(category).add(e);
-            }
-        }
-    }
-
     /**
-     * <p>Returns the <code>RestaurantType</code> for {@link JSONObject}
-     * <code>entry</code.></p>
-     *
-     * @param entry The raw <tt>JSON</tt> object as provided by the yelp API.
-     * @param categories Different categories for <code>entry</code>.
-     *
-     * @throws IllegalStateException If <code>entry</code> has an unrecognizable
-     *      restaurant type.
+     * <p>Queues the toggle of <code>category</code> on
+     * {@link #mySelectionUpdater}. The new selection is built there and
+     * published with a single swap of {@link #mySelection}, so the ControlP5
+     * callback returns immediately and the draw loop never blocks.</p>
      *
-     * @return
+     * @param name The name of the button that was toggled.
+     * @param category The category the button controls.
      */
-    private RestaurantType getType(JSONObject entry, JSONArray categories) {
-        Restaurant.RestaurantType result = null;
-
-        for (int i = 0; i < categories.size(); i++) {
-            result = searchInnerCategory(categories.getJSONArray(i));
-            if (result != null) { break; }
+    private void updateActiveSelection(String name,
+            final RestaurantCategory category) {
+        final boolean active =
+                myControls.get(Button.class, name).getBooleanValue();
+        if (myRecorder != null) {
+            myRecorder.toggled(category, active);
         }
 
-        if (result == null) {
-            throw new IllegalStateException("Unable to categorize restaurant: "
-                    + entry.getString("name") + ".");
-        }
-        return result;
-    }
+        mySelectionUpdater.execute(new Runnable() {
+            @Override public void run() {
+                SelectionSnapshot current = mySelection.get();
 
-    private Restaurant.RestaurantType searchInnerCategory(JSONArray category) {
-        Restaurant.RestaurantType result = null;
-        for (int i = 0; i < category.size(); i++) {
-            for (Restaurant.RestaurantType t :
-                    Restaurant.RestaurantType.values()) {
-                if (t.acceptableFor(category.getString(i))) { result = t; }
+                if (active) {
+                    publishSelection(current.with(category,
+                            myStore.getOrdering(category)));
+                }
+                else {
+                    publishSelection(current.without(category));
+                }
+                optimizeSelection(mySelection.get());
             }
-        }
-        return result;
-    }
-
-    public RestaurantReviewCount getReviewCt(double count) {
-        RestaurantReviewCount result = null;
-
-        if (count <= 100) {
-            result = RestaurantReviewCount.SMALL_COUNT;
-        }
-        else if (count > 100 && count < 300) {
-            result = RestaurantReviewCount.MEDIUM_COUNT;
-        }
-        else {
-            result = RestaurantReviewCount.LARGE_COUNT;
-        }
-        return result;
+        });
     }
 
-    public RestaurantRating getRating(double rating) {
-        RestaurantRating result = null;
-
-        if (rating == 3.0) {
-            result = RestaurantRating.THREE;
-        }
-        else if (rating == 3.5) {
-            result = RestaurantRating.THREE_POINT_FIVE;
-        }
-        else if (rating == 4.0) {
-            result = RestaurantRating.FOUR;
-        }
-        else if (rating == 4.5) {
-            result = RestaurantRating.FOUR_POINT_FIVE;
-        }
-        else {
-            throw new IllegalArgumentException("Unknown rating: " + rating
-                    + ". Use the range (3.0 - 4.5) with increments of .5.");
-        }
-        return result;
-    }
+    private void preprocessInput() {
+        if (myShards != null) { return; }   //nothing is loaded up front
 
-    /**
-     * <p>Sounds the alarm if the entry we're trying to add shares an ID
-     * with an entry already added.</p>
-     *
-     * @param seenAlready The set of entry IDs already parsed.
-     * @param id A candidate ID.
-     */
-    private void sanityCheckRestaurant(Set<String> seenAlready, String id) {
-        if (seenAlready.contains(id)) {
-            throw new IllegalStateException("Duplicate id: " + id);
-        }
+        List<Restaurant> restaurants = myOptions.getDataset() == null
+                ? myParser.parseBundled(myOptions.getFilter())
+                : myParser.parse(myOptions.getDataset(),
+                        myOptions.getFilter());
+        myStore.load(restaurants);
     }
-}
\ No newline at end of file
+}
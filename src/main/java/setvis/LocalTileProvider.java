@@ -0,0 +1,47 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import de.fhpotsdam.unfolding.core.Coordinate;
+import de.fhpotsdam.unfolding.providers.OpenStreetMap;
+
+import java.io.File;
+
+/**
+ * <p>Serves map tiles from a local directory laid out the usual
+ * <tt>{z}/{x}/{y}.png</tt> way, e.g. as saved from a tile server, so that
+ * the map draws the same (and as fast) with no network.</p>
+ */
+public class LocalTileProvider
+        extends OpenStreetMap.GenericOpenStreetMapProvider {
+
+    private final File myDirectory;
+
+    public LocalTileProvider(File directory) {
+        if (!directory.isDirectory()) {
+            throw new IllegalArgumentException("Not a tile directory: "
+                    + directory + ".");
+        }
+        myDirectory = directory.getAbsoluteFile();
+    }
+
+    @Override public String[] getTileUrls(Coordinate c) {
+        File tile = new File(myDirectory, getZoomString(c) + ".png");
+        return new String[] {tile.getPath()};
+    }
+}
@@ -18,6 +18,13 @@
 package setvis;
 
 import processing.core.PApplet;
+import setvis.metrics.Metrics;
+import setvis.metrics.MetricsServer;
+import setvis.server.TileServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * <p>Starts the main application.</p>
@@ -26,11 +33,101 @@ import processing.core.PApplet;
  */
 public class Main {
 
+    private static final int TILE_CACHE_CAPACITY = 2048;
+
+    /**
+     * @param args Forwarded to the sketch; see {@link LaunchOptions}.
+     *
+     * @throws IOException If the tile or metrics server cannot be started.
+     */
+    public static void main(String[] args) throws IOException {
+        LaunchOptions options = LaunchOptions.parse(args);
+
+        if (options.getShardDirectory() != null) {
+            File index = ShardWriter.write(options.getDataset() == null
+                    ? RestaurantParser.readBundled()
+                    : PApplet.loadJSONArray(options.getDataset()),
+                    options.getShardDirectory(), ShardWriter.DEFAULT_ZOOM);
+            System.out.println("Wrote shard index " + index);
+        }
+        else if (options.getExport() != null) {
+            export(options);
+        }
+        else if (options.isServing()) {
+            publishMetrics(options);
+            serve(options);
+        }
+        else {
+            publishMetrics(options);
+            PApplet.main("setvis.LineSets", args);
+        }
+    }
+
     /**
-     * @param args Arguments are ignored here.
+     * <p>Publishes {@link Metrics} through JMX and, if asked to, as plain
+     * text over HTTP.</p>
+     *
+     * @param options The parsed command line.
+     *
+     * @throws IOException If the metrics server cannot be started.
      */
-    public static void main(String[] args) {
-        PApplet.main("setvis.LineSets");
+    private static void publishMetrics(LaunchOptions options)
+            throws IOException {
+        Metrics.registerMBean();
+        if (options.isServingMetrics()) {
+            MetricsServer server = new MetricsServer(
+                    options.getMetricsPort());
+            server.start();
+            System.out.println("Serving LineSets metrics on"
+                    + " http://127.0.0.1:" + server.getPort() + "/metrics");
+        }
+    }
+
+    /**
+     * <p>Loads the dataset, computes every ordering and writes them, along
+     * with every restaurant, as GeoJSON.</p>
+     *
+     * @param options The parsed command line.
+     *
+     * @throws IOException If the export cannot be written.
+     */
+    private static void export(LaunchOptions options) throws IOException {
+        RestaurantStore store = new RestaurantStore();
+        store.load(load(options));
+        store.computeOrderings();
+
+        GeoJsonExporter.export(store, options.getExport());
+        System.out.println("Exported " + store.size() + " restaurants and "
+                + store.getCategories().size() + " paths to "
+                + options.getExport());
+    }
+
+    /**
+     * <p>Loads the dataset, computes every ordering up front, then serves
+     * overlay tiles until the process is killed.</p>
+     *
+     * @param options The parsed command line.
+     *
+     * @throws IOException If the tile server cannot be started.
+     */
+    private static void serve(LaunchOptions options) throws IOException {
+        RestaurantStore store = new RestaurantStore();
+        store.load(load(options));
+        store.computeOrderings();
+
+        TileServer server = new TileServer(store, options.getServePort(),
+                Runtime.getRuntime().availableProcessors(),
+                TILE_CACHE_CAPACITY);
+        server.start();
+        System.out.println("Serving LineSets tiles on http://127.0.0.1:"
+                + server.getPort() + "/tiles/");
+    }
+
+    private static List<Restaurant> load(LaunchOptions options) {
+        RestaurantParser parser = new RestaurantParser();
+        return options.getDataset() == null
+                ? parser.parseBundled(options.getFilter())
+                : parser.parse(options.getDataset(), options.getFilter());
     }
 
 }
@@ -0,0 +1,62 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+/**
+ * <p>Static helpers for the spherical (web) mercator projection used by
+ * standard <tt>z/x/y</tt> map tiles. World coordinates run from
+ * <code>0</code> to <code>1</code> in both directions; multiplying by
+ * {@link #worldSize(int)} gives pixels at a particular zoom level.</p>
+ */
+public class MercatorProjection {
+
+    public static final int TILE_SIZE = 256;
+
+    private static final double MAX_LATITUDE = 85.05112878;
+
+    public static double worldX(double longitude) {
+        return (longitude + 180.0) / 360.0;
+    }
+
+    public static double worldY(double latitude) {
+        double lat = Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude));
+        double sin = Math.sin(Math.toRadians(lat));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    public static double longitude(double worldX) {
+        return worldX * 360.0 - 180.0;
+    }
+
+    public static double latitude(double worldY) {
+        double n = Math.PI - 2.0 * Math.PI * worldY;
+        return Math.toDegrees(Math.atan(Math.sinh(n)));
+    }
+
+    /**
+     * <p>Returns the width (and height) of the whole world, in pixels, at
+     * zoom level <code>zoom</code>.</p>
+     *
+     * @param zoom A zoom level.
+     *
+     * @return The world size in pixels.
+     */
+    public static double worldSize(int zoom) {
+        return (double) TILE_SIZE * (1L << zoom);
+    }
+}
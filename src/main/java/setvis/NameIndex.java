@@ -0,0 +1,497 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import setvis.metrics.Distribution;
+import setvis.metrics.Metrics;
+
+import java.util.*;
+
+/**
+ * <p>Finds restaurants by name as it is typed: by the start of any word of
+ * their names, and, tolerating typos, by the trigrams (runs of three
+ * characters) their names share with the query.</p>
+ *
+ * <p>Names are normalized (lower case, punctuation dropped, one space
+ * between words) and every tail of a name starting at a word is kept in
+ * one sorted array, so the restaurants with a word starting with the query
+ * are a single range of it, found by binary search. Trigrams map to
+ * posting lists of restaurants, stored back to back in one array.</p>
+ *
+ * <p>Both are built once. Names indexed later (see {@link #with}) go into
+ * a second, small index of the same kind, which shadows the first for the
+ * restaurants it holds; once it grows past about the square root of the
+ * first, everything is indexed anew. A lookup allocates scratch space in
+ * proportion to its candidates only, so an index may be queried from any
+ * thread.</p>
+ *
+ * <p>Matches are ranked with restaurants whose names start with the query
+ * first, then those with a later word starting with it, then the rest by
+ * the share of the query's trigrams their names contain (at least
+ * {@link #FUZZY_THRESHOLD}); shorter names first among equals.</p>
+ */
+public final class NameIndex {
+
+    /**
+     * <p>The share of the query's trigrams a name must contain to match a
+     * query none of its words starts with.</p>
+     */
+    public static final double FUZZY_THRESHOLD = 0.5;
+
+    //the fewest names kept aside before everything is indexed anew
+    private static final int MIN_SIDE = 64;
+
+    private static final Distribution SEARCH_MICROS =
+            Metrics.distribution("search.micros");
+
+    //prefix matches are counted above any number of shared trigrams
+    private static final int PREFIX_WORD = 1 << 24;
+    private static final int PREFIX_NAME = 2 << 24;
+    private static final int SHARED = PREFIX_WORD - 1;
+
+    //candidates are numbered through myMain, then on through mySide
+    private final Postings myMain, mySide;
+
+    private NameIndex(Postings main, Postings side) {
+        myMain = main;
+        mySide = side;
+    }
+
+    /**
+     * <p>Indexes the names of <code>restaurants</code>.</p>
+     *
+     * @param restaurants Some restaurants.
+     *
+     * @return The index.
+     */
+    public static NameIndex build(Collection<Restaurant> restaurants) {
+        return new NameIndex(Postings.build(restaurants),
+                Postings.build(Collections.<Restaurant>emptyList()));
+    }
+
+    /**
+     * <p>Returns an index like this one that also holds
+     * <code>restaurants</code> under their current names. They are indexed
+     * on the side, unless that would put more than about the square root of
+     * the size of this index there: then everything in <code>store</code>
+     * is indexed anew.</p>
+     *
+     * @param restaurants Restaurants this index does not {@link #contains}.
+     * @param store The restaurants loaded now.
+     *
+     * @return The new index.
+     */
+    public NameIndex with(Collection<Restaurant> restaurants,
+            RestaurantStore store) {
+        int side = mySide.size() + restaurants.size();
+        if (side > Math.max(MIN_SIDE, (int) Math.sqrt(myMain.size()))) {
+            return build(store.getRestaurants());
+        }
+        List<Restaurant> result = new ArrayList<>(side);
+        result.addAll(Arrays.asList(mySide.restaurants));
+        result.addAll(restaurants);
+        return new NameIndex(myMain, Postings.build(result));
+    }
+
+    /**
+     * <p>Returns whether this index holds <code>restaurant</code> under its
+     * current name.</p>
+     *
+     * @param restaurant A restaurant.
+     *
+     * @return Whether it needs no reindexing.
+     */
+    public boolean contains(Restaurant restaurant) {
+        Integer i = mySide.ids.get(restaurant.getID());
+        if (i != null) {
+            return mySide.restaurants[i].getName().equals(
+                    restaurant.getName());
+        }
+        i = myMain.ids.get(restaurant.getID());
+        return i != null && myMain.restaurants[i].getName().equals(
+                restaurant.getName());
+    }
+
+    /**
+     * <p>Returns the best matches for <code>query</code> among the
+     * restaurants currently in <code>store</code> (indexed restaurants it no
+     * longer holds are skipped).</p>
+     *
+     * @param query What has been typed so far.
+     * @param limit The most matches to return.
+     * @param store The restaurants to search among.
+     *
+     * @return Up to <code>limit</code> restaurants from <code>store</code>,
+     *      best match first.
+     */
+    public List<Restaurant> search(String query, int limit,
+            RestaurantStore store) {
+        long begin = System.nanoTime();
+        String q = normalize(query);
+        if (q.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        //the query is still being typed, so it has no closing space
+        long[] grams = q.length() < 3 ? new long[0] : trigrams(" " + q);
+        Postings[] levels = { myMain, mySide };
+        int[][] prefixes = new int[2][];
+        int[][] gramIds = new int[2][];
+        int candidates = 0;
+        for (int l = 0; l < 2; l++) {
+            prefixes[l] = levels[l].prefixRange(q);
+            gramIds[l] = levels[l].gramIds(grams);
+            candidates += prefixes[l][1] - prefixes[l][0]
+                    + levels[l].postingCount(gramIds[l]);
+        }
+
+        Scores scores = new Scores(candidates);
+        for (int l = 0; l < 2; l++) {
+            Postings level = levels[l];
+            int offset = l == 0 ? 0 : myMain.size();
+
+            for (int j = prefixes[l][0]; j < prefixes[l][1]; j++) {
+                int i = level.tailRestaurants[j];
+                int s = scores.slot(offset + i);
+                int score = scores.values[s];
+                int prefix = level.tails[j].length() == level.names[i].length()
+                        ? PREFIX_NAME : PREFIX_WORD;
+                scores.values[s] = Math.max(score & ~SHARED, prefix)
+                        | (score & SHARED);
+            }
+            for (int g : gramIds[l]) {
+                if (g < 0) { continue; }
+
+                for (int k = level.gramStart[g]; k < level.gramStart[g + 1];
+                        k++) {
+                    scores.values[scores.slot(offset
+                            + level.gramRestaurants[k])]++;
+                }
+            }
+        }
+
+        PriorityQueue<Match> best = new PriorityQueue<>();
+        for (int t = 0; t < scores.count; t++) {
+            int s = scores.order[t];
+            int candidate = scores.keys[s];
+            Postings level = candidate < myMain.size() ? myMain : mySide;
+            int i = level == myMain ? candidate : candidate - myMain.size();
+
+            int prefix = scores.values[s] & ~SHARED;
+            double shared = grams.length == 0 ? 0
+                    : (double) (scores.values[s] & SHARED) / grams.length;
+            if (prefix == 0 && shared < FUZZY_THRESHOLD) { continue; }
+
+            double score = (prefix >> 24) + shared;
+            int length = level.names[i].length();
+            if (best.size() == limit && !best.peek().isBeatenBy(score,
+                    length)) {
+                continue;
+            }
+            String id = level.restaurants[i].getID();
+            //an entry on the side shadows any older one for the same id
+            if (level == myMain ? mySide.ids.containsKey(id)
+                    : mySide.ids.get(id) != i) {
+                continue;
+            }
+            Restaurant current = store.getRestaurant(id);
+            if (current == null) { continue; }
+
+            best.add(new Match(current, score, length));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<Restaurant> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            result.add(best.poll().restaurant);
+        }
+        Collections.reverse(result);
+        SEARCH_MICROS.record((System.nanoTime() - begin) / 1000);
+        return result;
+    }
+
+    public int size() {
+        return myMain.size() + mySide.size();
+    }
+
+    /**
+     * <p>Lower cases <code>name</code>, drops apostrophes (so that
+     * <tt>joe's</tt> is found as <tt>joes</tt>) and turns every other run
+     * of characters that are not letters or digits into a single
+     * space.</p>
+     */
+    static String normalize(String name) {
+        StringBuilder result = new StringBuilder(name.length());
+        boolean space = false;
+        for (char c : name.toLowerCase(Locale.ROOT).toCharArray()) {
+            if (Character.isLetterOrDigit(c)) {
+                if (space && result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append(c);
+                space = false;
+            }
+            else if (c != '\'' && c != '\u2019') {
+                space = true;
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * <p>Returns the distinct trigrams of <code>text</code>, each packed
+     * into a <code>long</code>.</p>
+     */
+    private static long[] trigrams(String text) {
+        long[] result = new long[Math.max(0, text.length() - 2)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((long) text.charAt(i) << 32)
+                    | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+        }
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (i == 0 || result[i] != result[i - 1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+
+    /**
+     * <p>The tails and trigram posting lists of some names; restaurants are
+     * numbered in the order they were given.</p>
+     */
+    private static final class Postings {
+        final Restaurant[] restaurants;
+        final String[] names;
+        //the last restaurant given with each id
+        final Map<String, Integer> ids;
+
+        //every tail of every name starting at a word, sorted, and its owner
+        final String[] tails;
+        final int[] tailRestaurants;
+
+        //the restaurants with trigram g are gramStart[g] to gramStart[g + 1]
+        final Map<Long, Integer> grams;
+        final int[] gramStart, gramRestaurants;
+
+        private Postings(Restaurant[] restaurants, String[] names,
+                Map<String, Integer> ids, String[] tails,
+                int[] tailRestaurants, Map<Long, Integer> grams,
+                int[] gramStart, int[] gramRestaurants) {
+            this.restaurants = restaurants;
+            this.names = names;
+            this.ids = ids;
+            this.tails = tails;
+            this.tailRestaurants = tailRestaurants;
+            this.grams = grams;
+            this.gramStart = gramStart;
+            this.gramRestaurants = gramRestaurants;
+        }
+
+        static Postings build(Collection<Restaurant> restaurants) {
+            Restaurant[] all = restaurants.toArray(
+                    new Restaurant[restaurants.size()]);
+            int n = all.length;
+            String[] names = new String[n];
+            Map<String, Integer> ids = new HashMap<>();
+            List<Tail> tails = new ArrayList<>();
+            Map<Long, Integer> grams = new HashMap<>();
+            long[] postings = new long[16];
+            int postingCount = 0;
+
+            for (int i = 0; i < n; i++) {
+                String name = normalize(all[i].getName());
+                names[i] = name;
+                ids.put(all[i].getID(), i);
+
+                for (int start = 0; start < name.length();
+                        start = name.indexOf(' ', start) + 1) {
+                    tails.add(new Tail(name.substring(start), i));
+                    if (name.indexOf(' ', start) < 0) { break; }
+                }
+                for (long gram : trigrams(" " + name + " ")) {
+                    Integer id = grams.get(gram);
+                    if (id == null) {
+                        id = grams.size();
+                        grams.put(gram, id);
+                    }
+                    if (postingCount == postings.length) {
+                        postings = Arrays.copyOf(postings, 2 * postingCount);
+                    }
+                    //sorting by trigram keeps each list in restaurant order
+                    postings[postingCount++] = ((long) id << 32) | i;
+                }
+            }
+            Collections.sort(tails);
+            String[] tailNames = new String[tails.size()];
+            int[] tailRestaurants = new int[tails.size()];
+            for (int i = 0; i < tailNames.length; i++) {
+                tailNames[i] = tails.get(i).tail;
+                tailRestaurants[i] = tails.get(i).restaurant;
+            }
+
+            Arrays.sort(postings, 0, postingCount);
+            int[] gramStart = new int[grams.size() + 1];
+            int[] gramRestaurants = new int[postingCount];
+            for (int i = 0; i < postingCount; i++) {
+                gramStart[(int) (postings[i] >>> 32) + 1]++;
+                gramRestaurants[i] = (int) postings[i];
+            }
+            for (int g = 0; g < grams.size(); g++) {
+                gramStart[g + 1] += gramStart[g];
+            }
+            return new Postings(all, names, ids, tailNames, tailRestaurants,
+                    grams, gramStart, gramRestaurants);
+        }
+
+        int size() {
+            return restaurants.length;
+        }
+
+        /**
+         * <p>Returns the range of {@link #tails} starting with
+         * <code>q</code>, as <tt>{from, to}</tt>.</p>
+         */
+        int[] prefixRange(String q) {
+            return new int[] { lowerBound(q),
+                    lowerBound(q + Character.MAX_VALUE) };
+        }
+
+        /**
+         * <p>Returns the id of each of <code>query</code>'s trigrams, or
+         * <code>-1</code> for those no name here contains.</p>
+         */
+        int[] gramIds(long[] query) {
+            int[] result = new int[query.length];
+            for (int i = 0; i < query.length; i++) {
+                Integer g = grams.get(query[i]);
+                result[i] = g == null ? -1 : g;
+            }
+            return result;
+        }
+
+        int postingCount(int[] gramIds) {
+            int result = 0;
+            for (int g : gramIds) {
+                if (g >= 0) {
+                    result += gramStart[g + 1] - gramStart[g];
+                }
+            }
+            return result;
+        }
+
+        private int lowerBound(String q) {
+            int low = 0, high = tails.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (tails[middle].compareTo(q) < 0) {
+                    low = middle + 1;
+                }
+                else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * <p>The score of each candidate of one search, in an open addressing
+     * table sized to the candidates rather than to the index, remembering
+     * the order candidates were first scored in.</p>
+     */
+    private static final class Scores {
+        final int[] keys, values, order;
+        int count;
+
+        Scores(int candidates) {
+            int capacity = Integer.highestOneBit(Math.max(1, candidates)) << 2;
+            keys = new int[capacity];
+            values = new int[capacity];
+            order = new int[Math.max(1, candidates)];
+            Arrays.fill(keys, -1);
+        }
+
+        /**
+         * <p>Returns the slot of <code>key</code>, claiming one for it if it
+         * has none yet.</p>
+         */
+        int slot(int key) {
+            int mask = keys.length - 1;
+            int hash = key * 0x9E3779B9;
+            int s = (hash ^ hash >>> 16) & mask;
+            while (keys[s] != key) {
+                if (keys[s] < 0) {
+                    keys[s] = key;
+                    order[count++] = s;
+                    return s;
+                }
+                s = (s + 1) & mask;
+            }
+            return s;
+        }
+    }
+
+    private static final class Tail implements Comparable<Tail> {
+        final String tail;
+        final int restaurant;
+
+        Tail(String tail, int restaurant) {
+            this.tail = tail;
+            this.restaurant = restaurant;
+        }
+
+        @Override public int compareTo(Tail o) {
+            return tail.compareTo(o.tail);
+        }
+    }
+
+    /**
+     * <p>A candidate; the natural order puts the worst match first.</p>
+     */
+    private static final class Match implements Comparable<Match> {
+        final Restaurant restaurant;
+        final double score;
+        final int length;
+
+        Match(Restaurant restaurant, double score, int length) {
+            this.restaurant = restaurant;
+            this.score = score;
+            this.length = length;
+        }
+
+        boolean isBeatenBy(double score, int length) {
+            return score > this.score
+                    || (score == this.score && length < this.length);
+        }
+
+        @Override public int compareTo(Match o) {
+            int result = Double.compare(score, o.score);
+            if (result == 0) {
+                result = Integer.compare(o.length, length);
+            }
+            if (result == 0) {
+                result = o.restaurant.getName().compareTo(
+                        restaurant.getName());
+            }
+            return result;
+        }
+    }
+}
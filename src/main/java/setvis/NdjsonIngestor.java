@@ -0,0 +1,412 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import processing.data.JSONObject;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * <p>Reads line-delimited <tt>JSON</tt> (one yelp record per line),
+ * optionally gzipped, in parallel on a fork/join pool.</p>
+ *
+ * <p>Plain files are split into chunks of about {@link #CHUNK_SIZE} bytes,
+ * each taking every line that <em>starts</em> inside it, and the chunks are
+ * parsed by recursively halving the file. Gzipped files cannot be split, so
+ * one thread inflates them into line-aligned blocks of the same size and
+ * hands each block to the pool, keeping only a few blocks in flight.</p>
+ *
+ * <p>Before a line is decoded, its raw <tt>latitude</tt> and
+ * <tt>longitude</tt> are picked out of the bytes and checked against the
+ * {@link RestaurantFilter}; the categories are checked before a
+ * {@link Restaurant.RestaurantBuilder} is made (see
+ * {@link RestaurantParser#parse(JSONObject, RestaurantFilter)}). A bad
+ * line does not fail the ingest: records that cannot be categorized (other
+ * kinds of business, in a full dump) and lines that are not a valid record
+ * are skipped, as are repeats of an id already read, and each is counted
+ * in the <tt>ingest.*</tt> metrics.</p>
+ */
+public class NdjsonIngestor {
+
+    public static final int CHUNK_SIZE = 8 << 20;
+
+    private static final int READ_AHEAD = 64 << 10;
+
+    private static final byte[] LATITUDE =
+            "\"latitude\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LONGITUDE =
+            "\"longitude\"".getBytes(StandardCharsets.US_ASCII);
+
+    private final RestaurantParser myParser;
+    private final RestaurantFilter myFilter;
+    private final int myParallelism;
+
+    public NdjsonIngestor(RestaurantParser parser, RestaurantFilter filter) {
+        this(parser, filter, Runtime.getRuntime().availableProcessors());
+    }
+
+    public NdjsonIngestor(RestaurantParser parser, RestaurantFilter filter,
+            int parallelism) {
+        myParser = parser;
+        myFilter = filter;
+        myParallelism = parallelism;
+    }
+
+    /**
+     * <p>Returns whether <code>file</code> is named like line-delimited
+     * <tt>JSON</tt>: <tt>.ndjson</tt> or <tt>.jsonl</tt>, optionally
+     * followed by <tt>.gz</tt>.</p>
+     *
+     * @param file A dataset file.
+     *
+     * @return Whether this class should read <code>file</code>.
+     */
+    public static boolean accepts(File file) {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return name.endsWith(".ndjson") || name.endsWith(".jsonl");
+    }
+
+    /**
+     * <p>Reads the restaurants in <code>file</code> that pass the filter,
+     * keeping the first record of each id.</p>
+     *
+     * @param file A (possibly gzipped) line-delimited dataset.
+     *
+     * @throws IOException If <code>file</code> cannot be read.
+     *
+     * @return The restaurants, in file order.
+     */
+    public List<Restaurant> ingest(File file) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(myParallelism);
+        List<Restaurant> result;
+        try {
+            result = file.getName().toLowerCase().endsWith(".gz")
+                    ? ingestCompressed(file, pool)
+                    : ingestPlain(file, pool);
+        }
+        finally {
+            pool.shutdown();
+        }
+        return withoutDuplicates(result);
+    }
+
+    /**
+     * <p>Drops every restaurant whose id was already seen earlier in
+     * <code>restaurants</code>, which are in file order.</p>
+     */
+    private static List<Restaurant> withoutDuplicates(
+            List<Restaurant> restaurants) {
+        List<Restaurant> result = new ArrayList<>(restaurants.size());
+        Set<String> seen = new HashSet<>();
+
+        for (Restaurant r : restaurants) {
+            if (seen.add(r.getID())) {
+                result.add(r);
+                RestaurantParser.ACCEPTED.mark();
+            }
+            else {
+                RestaurantParser.DUPLICATES.increment();
+            }
+        }
+        return result;
+    }
+
+    private List<Restaurant> ingestPlain(File file, ForkJoinPool pool)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return pool.invoke(new ChunkTask(channel, 0, channel.size()));
+        }
+    }
+
+    private List<Restaurant> ingestCompressed(File file, ForkJoinPool pool)
+            throws IOException {
+        List<Restaurant> result = new ArrayList<>();
+        Deque<ForkJoinTask<List<Restaurant>>> inFlight = new ArrayDeque<>();
+
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file),
+                READ_AHEAD)) {
+            byte[] carry = new byte[0];
+            int carried = 0;
+            while (true) {
+                byte[] block = Arrays.copyOf(carry, Math.max(CHUNK_SIZE,
+                        carried + READ_AHEAD));
+                int length = carried;
+                int n;
+                while (length < block.length
+                        && (n = in.read(block, length, block.length - length))
+                        > 0) {
+                    length += n;
+                }
+                boolean done = length < block.length;
+
+                //hand off whole lines only; the rest starts the next block
+                int end = done ? length : lastIndexOf(block, (byte) '\n',
+                        length) + 1;
+                if (end == 0 && !done) {
+                    //a single line longer than the block: read on
+                    carry = block;
+                    carried = length;
+                    continue;
+                }
+                carried = length - end;
+                carry = Arrays.copyOfRange(block, end, length);
+
+                if (end > 0) {
+                    inFlight.add(pool.submit(new BlockTask(block, 0, end)));
+                }
+                if (inFlight.size() > 2 * myParallelism) {
+                    result.addAll(inFlight.poll().join());
+                }
+                if (done) { break; }
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            result.addAll(inFlight.poll().join());
+        }
+        return result;
+    }
+
+    /**
+     * <p>Parses every line of <code>data</code> between <code>from</code>
+     * and <code>to</code>.</p>
+     */
+    private List<Restaurant> parseLines(byte[] data, int from, int to) {
+        List<Restaurant> result = new ArrayList<>();
+        boolean bounded = myFilter.isBounded();
+
+        for (int start = from; start < to; ) {
+            int end = indexOf(data, (byte) '\n', start, to);
+            int next = end + 1;
+            if (end > start && data[end - 1] == '\r') { end--; }
+            if (isBlank(data, start, end)) {
+                start = next;
+                continue;
+            }
+            RestaurantParser.INGESTED.mark();
+
+            if (bounded) {
+                double latitude = rawNumber(data, start, end, LATITUDE);
+                double longitude = rawNumber(data, start, end, LONGITUDE);
+                if (!Double.isNaN(latitude) && !Double.isNaN(longitude)
+                        && !myFilter.acceptsLocation(latitude, longitude)) {
+                    RestaurantParser.FILTERED.increment();
+                    start = next;
+                    continue;
+                }
+            }
+            try {
+                Restaurant r = myParser.parse(JSONObject.parse(new String(data,
+                        start, end - start, StandardCharsets.UTF_8)), myFilter);
+                if (r == null) {
+                    RestaurantParser.FILTERED.increment();
+                }
+                else {
+                    result.add(r);
+                }
+            }
+            catch (RestaurantParser.UncategorizedException e) {
+                //already counted by the parser
+            }
+            catch (RuntimeException e) {
+                //malformed JSON, a missing key or an unknown rating
+                RestaurantParser.INVALID.increment();
+            }
+            start = next;
+        }
+        return result;
+    }
+
+    /**
+     * <p>Parses the lines starting in <tt>[start, end)</tt> of a plain
+     * file, halving the range until it is at most {@link #CHUNK_SIZE}
+     * bytes.</p>
+     */
+    private final class ChunkTask extends RecursiveTask<List<Restaurant>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel myChannel;
+        private final long myStart, myEnd;
+
+        ChunkTask(FileChannel channel, long start, long end) {
+            myChannel = channel;
+            myStart = start;
+            myEnd = end;
+        }
+
+        @Override protected List<Restaurant> compute() {
+            if (myEnd - myStart > CHUNK_SIZE) {
+                long middle = myStart + (myEnd - myStart) / 2;
+                ChunkTask left = new ChunkTask(myChannel, myStart, middle);
+                ChunkTask right = new ChunkTask(myChannel, middle, myEnd);
+                right.fork();
+                List<Restaurant> result = left.compute();
+                result.addAll(right.join());
+                return result;
+            }
+            try {
+                //one byte back, to see whether a line starts at myStart
+                long from = myStart == 0 ? 0 : myStart - 1;
+                byte[] data = readLines(myChannel, from, myEnd);
+                int first = 0;
+                if (myStart > 0) {
+                    first = indexOf(data, (byte) '\n', 0, data.length) + 1;
+                }
+                return parseLines(data, first, data.length);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("Unable to read chunk at "
+                        + myStart + ".", e);
+            }
+        }
+    }
+
+    private final class BlockTask extends RecursiveTask<List<Restaurant>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] myData;
+        private final int myFrom, myTo;
+
+        BlockTask(byte[] data, int from, int to) {
+            myData = data;
+            myFrom = from;
+            myTo = to;
+        }
+
+        @Override protected List<Restaurant> compute() {
+            return parseLines(myData, myFrom, myTo);
+        }
+    }
+
+    /**
+     * <p>Reads <tt>[from, end)</tt> of <code>channel</code>, then on up to
+     * and including the first line break at or after <code>end - 1</code>
+     * (or the end of the file), so that the last line starting before
+     * <code>end</code> is whole.</p>
+     */
+    private static byte[] readLines(FileChannel channel, long from, long end)
+            throws IOException {
+        byte[] result = new byte[(int) (end - from)];
+        int length = read(channel, from, result, 0, result.length);
+        int searchFrom = Math.max(0, length - 1);
+
+        while (true) {
+            int newline = indexOf(result, (byte) '\n', searchFrom, length);
+            if (newline < length) {
+                return Arrays.copyOf(result, newline + 1);
+            }
+            if (from + length >= channel.size()) {
+                return Arrays.copyOf(result, length);
+            }
+            if (length + READ_AHEAD > result.length) {
+                result = Arrays.copyOf(result, length + READ_AHEAD);
+            }
+            searchFrom = length;
+            length += read(channel, from + length, result, length,
+                    READ_AHEAD);
+        }
+    }
+
+    private static int read(FileChannel channel, long position, byte[] into,
+            int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(into, offset, length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - offset)
+                    < 0) {
+                break;
+            }
+        }
+        return buffer.position() - offset;
+    }
+
+    /**
+     * <p>Returns the index of the first <code>b</code> in <tt>[from,
+     * to)</tt>, or <code>to</code> if there is none.</p>
+     */
+    private static int indexOf(byte[] data, byte b, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == b) { return i; }
+        }
+        return to;
+    }
+
+    private static int lastIndexOf(byte[] data, byte b, int to) {
+        for (int i = to - 1; i >= 0; i--) {
+            if (data[i] == b) { return i; }
+        }
+        return -1;
+    }
+
+    private static boolean isBlank(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] != ' ' && data[i] != '\t') { return false; }
+        }
+        return true;
+    }
+
+    /**
+     * <p>Returns the number following the first occurrence of
+     * <code>key</code> (a quoted field name) in <tt>[from, to)</tt>, or
+     * <code>NaN</code> if there is none.</p>
+     */
+    private static double rawNumber(byte[] data, int from, int to,
+            byte[] key) {
+        outer:
+        for (int i = from; i <= to - key.length; i++) {
+            for (int k = 0; k < key.length; k++) {
+                if (data[i + k] != key[k]) { continue outer; }
+            }
+            int p = i + key.length;
+            while (p < to && (data[p] == ' ' || data[p] == ':')) { p++; }
+            int q = p;
+            while (q < to && (Character.isDigit(data[q]) || data[q] == '-'
+                    || data[q] == '+' || data[q] == '.' || data[q] == 'e'
+                    || data[q] == 'E')) {
+                q++;
+            }
+            try {
+                return Double.parseDouble(new String(data, p, q - p,
+                        StandardCharsets.US_ASCII));
+            }
+            catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+        return Double.NaN;
+    }
+}
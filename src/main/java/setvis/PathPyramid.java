@@ -0,0 +1,167 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>A category path simplified once per zoom level, so that the number of
+ * vertices drawn follows what is distinguishable on screen rather than the
+ * number of restaurants in the category.</p>
+ *
+ * <p>Levels are produced by Douglas&ndash;Peucker simplification in web
+ * mercator pixels, with a tolerance of half a pixel at each level. The
+ * recursion is run once, recording the largest tolerance at which each
+ * vertex survives, which makes every level a filter of the same ranking.
+ * The ends of the path and every <em>locked</em> restaurant (one where the
+ * path meets another active category) survive at all levels.</p>
+ */
+public final class PathPyramid {
+
+    public static final int MAX_ZOOM = 21;
+
+    private static final double TOLERANCE_PIXELS = 0.5;
+
+    private final List<List<Restaurant>> myLevels = new ArrayList<>();
+
+    /**
+     * <p>Builds every level for <code>ordering</code>.</p>
+     *
+     * @param ordering A category path.
+     * @param locked Restaurants that must be kept at every level.
+     */
+    public PathPyramid(List<Restaurant> ordering, Set<Restaurant> locked) {
+        int n = ordering.size();
+        double[] xs = new double[n], ys = new double[n];
+        double[] significance = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            Restaurant r = ordering.get(i);
+            xs[i] = MercatorProjection.worldX(r.getLocation().getLon());
+            ys[i] = MercatorProjection.worldY(r.getLocation().getLat());
+            if (i == 0 || i == n - 1 || locked.contains(r)) {
+                significance[i] = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        //locked vertices split the path into independent runs
+        int start = 0;
+        for (int i = 1; i < n; i++) {
+            if (significance[i] == Double.POSITIVE_INFINITY) {
+                rank(xs, ys, significance, start, i);
+                start = i;
+            }
+        }
+
+        List<Restaurant> full = Collections.unmodifiableList(
+                new ArrayList<>(ordering));
+        for (int zoom = 0; zoom <= MAX_ZOOM; zoom++) {
+            double tolerance =
+                    TOLERANCE_PIXELS / MercatorProjection.worldSize(zoom);
+            List<Restaurant> level = new ArrayList<>();
+
+            for (int i = 0; i < n; i++) {
+                if (significance[i] > tolerance) {
+                    level.add(ordering.get(i));
+                }
+            }
+            if (level.size() == n) {
+                //every finer level is the full path as well
+                while (myLevels.size() <= MAX_ZOOM) {
+                    myLevels.add(full);
+                }
+                break;
+            }
+            myLevels.add(Collections.unmodifiableList(level));
+        }
+    }
+
+    /**
+     * <p>Returns the path simplified for display at <code>zoom</code>.</p>
+     *
+     * @param zoom A zoom level (clamped to the levels available).
+     *
+     * @return The simplified path.
+     */
+    public List<Restaurant> forZoom(int zoom) {
+        return myLevels.get(Math.max(0, Math.min(MAX_ZOOM, zoom)));
+    }
+
+    /**
+     * <p>Runs Douglas&ndash;Peucker over the vertices strictly between
+     * <code>first</code> and <code>last</code>. A vertex's significance is
+     * the distance that made it a split point, capped by that of the split
+     * above it, so it survives exactly the tolerances under which plain
+     * Douglas&ndash;Peucker would keep it.</p>
+     */
+    private static void rank(double[] xs, double[] ys, double[] significance,
+            int first, int last) {
+        int[] stack = new int[64];
+        double[] caps = new double[32];
+        stack[0] = first;
+        stack[1] = last;
+        caps[0] = Double.POSITIVE_INFINITY;
+        int top = 1;
+
+        while (top > 0) {
+            top--;
+            int a = stack[2 * top], b = stack[2 * top + 1];
+            double cap = caps[top];
+            if (b - a < 2) { continue; }
+
+            int split = -1;
+            double farthest = -1;
+            for (int i = a + 1; i < b; i++) {
+                double d = segmentDistance(xs[i], ys[i], xs[a], ys[a], xs[b],
+                        ys[b]);
+                if (d > farthest) {
+                    farthest = d;
+                    split = i;
+                }
+            }
+            significance[split] = Math.min(farthest, cap);
+
+            if (2 * (top + 2) > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                caps = Arrays.copyOf(caps, caps.length * 2);
+            }
+            stack[2 * top] = a;
+            stack[2 * top + 1] = split;
+            caps[top++] = significance[split];
+            stack[2 * top] = split;
+            stack[2 * top + 1] = b;
+            caps[top++] = significance[split];
+        }
+    }
+
+    private static double segmentDistance(double px, double py, double ax,
+            double ay, double bx, double by) {
+        double dx = bx - ax, dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0
+                : ((px - ax) * dx + (py - ay) * dy) / lengthSquared;
+        t = Math.max(0, Math.min(1, t));
+
+        double ex = px - (ax + t * dx), ey = py - (ay + t * dy);
+        return Math.sqrt(ex * ex + ey * ey);
+    }
+}
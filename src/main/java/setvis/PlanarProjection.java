@@ -0,0 +1,89 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import de.fhpotsdam.unfolding.geo.Location;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>A local, flat (equirectangular) frame centered on a reference point,
+ * measured in kilometres. Across the few kilometres spanned by a city the
+ * error against great-circle distance is far below anything visible, and
+ * distances become plain Euclidean arithmetic on <code>float</code>s (see
+ * {@link DistanceKernel}).</p>
+ */
+public final class PlanarProjection {
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    private final double myLatitude, myLongitude;
+    private final double myKmPerDegreeX, myKmPerDegreeY;
+
+    public PlanarProjection(Location reference) {
+        myLatitude = reference.getLat();
+        myLongitude = reference.getLon();
+        myKmPerDegreeY = Math.toRadians(1) * EARTH_RADIUS_KM;
+        myKmPerDegreeX = myKmPerDegreeY * Math.cos(Math.toRadians(myLatitude));
+    }
+
+    /**
+     * <p>Returns a frame centered on the centroid of
+     * <code>restaurants</code>.</p>
+     *
+     * @param restaurants Some restaurants.
+     *
+     * @return A projection suited to <code>restaurants</code>.
+     */
+    public static PlanarProjection around(Collection<Restaurant> restaurants) {
+        double lat = 0, lon = 0;
+        for (Restaurant r : restaurants) {
+            lat += r.getLocation().getLat();
+            lon += r.getLocation().getLon();
+        }
+        int n = Math.max(1, restaurants.size());
+        return new PlanarProjection(new Location(lat / n, lon / n));
+    }
+
+    public float x(Location l) {
+        return (float) ((l.getLon() - myLongitude) * myKmPerDegreeX);
+    }
+
+    public float y(Location l) {
+        return (float) ((l.getLat() - myLatitude) * myKmPerDegreeY);
+    }
+
+    /**
+     * <p>Projects <code>restaurants</code> into <code>xs</code> and
+     * <code>ys</code>, index for index.</p>
+     *
+     * @param restaurants The restaurants to project.
+     * @param xs Receives the x coordinates; at least as long as
+     *      <code>restaurants</code>.
+     * @param ys Receives the y coordinates; at least as long as
+     *      <code>restaurants</code>.
+     */
+    public void project(List<Restaurant> restaurants, float[] xs, float[] ys) {
+        for (int i = 0; i < restaurants.size(); i++) {
+            Location l = restaurants.get(i).getLocation();
+            xs[i] = x(l);
+            ys[i] = y(l);
+        }
+    }
+}
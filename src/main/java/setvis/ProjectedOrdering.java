@@ -0,0 +1,195 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>An ordering kept together with the {@link PlanarProjection} of its
+ * restaurants, in parallel <code>float[]</code>s, so that it can be edited
+ * in place and measured without projecting it again. Only the restaurants
+ * added are ever projected.</p>
+ *
+ * <p>The frame is fixed when the ordering is first projected, or, for an
+ * ordering that starts out (or ends up) empty, when restaurants are next
+ * inserted into it; across a city, later additions far from its center are
+ * still measured well enough to place them.</p>
+ *
+ * <p>An ordering is not thread-safe; it belongs to the store's writer
+ * (see {@link RestaurantStore}).</p>
+ */
+public final class ProjectedOrdering {
+
+    private PlanarProjection myFrame;
+    private final List<Restaurant> myRestaurants;
+    private float[] myXs, myYs;
+
+    //distances to a restaurant being inserted
+    private float[] myScratch;
+
+    /**
+     * <p>Projects <code>ordering</code> into a frame centered on its
+     * restaurants.</p>
+     *
+     * @param ordering An ordering; copied.
+     */
+    public ProjectedOrdering(List<Restaurant> ordering) {
+        int n = ordering.size();
+        myFrame = PlanarProjection.around(ordering);
+        myRestaurants = new ArrayList<>(ordering);
+        myXs = new float[Math.max(n, 4)];
+        myYs = new float[myXs.length];
+        myScratch = new float[myXs.length];
+        myFrame.project(myRestaurants, myXs, myYs);
+    }
+
+    public int size() {
+        return myRestaurants.size();
+    }
+
+    /**
+     * <p>Returns the restaurants, in order.</p>
+     *
+     * @return A new, immutable list.
+     */
+    public List<Restaurant> getRestaurants() {
+        return Collections.unmodifiableList(new ArrayList<>(myRestaurants));
+    }
+
+    /**
+     * <p>Inserts each of <code>restaurants</code> in turn (see
+     * {@link #insert}). If the ordering is empty, the frame is first
+     * centered on <code>restaurants</code>, as
+     * {@link RestaurantOrderings#compute} would center it.</p>
+     *
+     * @param restaurants The restaurants to insert.
+     */
+    public void insertAll(Collection<Restaurant> restaurants) {
+        if (myRestaurants.isEmpty() && !restaurants.isEmpty()) {
+            myFrame = PlanarProjection.around(restaurants);
+        }
+        for (Restaurant r : restaurants) {
+            place(r);
+        }
+    }
+
+    /**
+     * <p>Inserts <code>r</code> wherever it lengthens the path the least.
+     * This costs a single pass over the ordering, as opposed to
+     * recomputing it from scratch, and allocates nothing unless the
+     * arrays need to grow. If the ordering is empty, the frame is first
+     * centered on <code>r</code>.</p>
+     *
+     * @param r The restaurant to insert.
+     */
+    public void insert(Restaurant r) {
+        if (myRestaurants.isEmpty()) {
+            myFrame = new PlanarProjection(r.getLocation());
+        }
+        place(r);
+    }
+
+    private void place(Restaurant r) {
+        int n = myRestaurants.size();
+        float x = myFrame.x(r.getLocation());
+        float y = myFrame.y(r.getLocation());
+        int bestIndex = 0;
+
+        if (n > 0) {
+            float[] toR = myScratch;
+            DistanceKernel.distancesFrom(myXs, myYs, n, x, y, toR);
+
+            double bestCost = toR[0];
+            if (toR[n - 1] < bestCost) {
+                bestIndex = n;
+                bestCost = toR[n - 1];
+            }
+            for (int i = 1; i < n; i++) {
+                double cost = toR[i - 1] + toR[i]
+                        - DistanceKernel.distance(myXs, myYs, i - 1, i);
+
+                if (cost < bestCost) {
+                    bestIndex = i;
+                    bestCost = cost;
+                }
+            }
+        }
+        if (n == myXs.length) {
+            myXs = Arrays.copyOf(myXs, 2 * n);
+            myYs = Arrays.copyOf(myYs, 2 * n);
+            myScratch = new float[2 * n];
+        }
+        System.arraycopy(myXs, bestIndex, myXs, bestIndex + 1, n - bestIndex);
+        System.arraycopy(myYs, bestIndex, myYs, bestIndex + 1, n - bestIndex);
+        myXs[bestIndex] = x;
+        myYs[bestIndex] = y;
+        myRestaurants.add(bestIndex, r);
+    }
+
+    /**
+     * <p>Drops <code>removed</code> from the ordering, keeping the order of
+     * the rest.</p>
+     *
+     * @param removed The restaurants to remove.
+     */
+    public void removeAll(Set<Restaurant> removed) {
+        int kept = 0;
+        for (int i = 0; i < myRestaurants.size(); i++) {
+            Restaurant r = myRestaurants.get(i);
+            if (removed.contains(r)) { continue; }
+
+            myRestaurants.set(kept, r);
+            myXs[kept] = myXs[i];
+            myYs[kept] = myYs[i];
+            kept++;
+        }
+        myRestaurants.subList(kept, myRestaurants.size()).clear();
+    }
+
+    /**
+     * <p>Swaps in new versions of restaurants (by yelp <code>id</code>)
+     * that sit exactly where the old ones did, so that their coordinates
+     * still hold.</p>
+     *
+     * @param replacements The new versions, by <code>id</code>.
+     */
+    public void replaceAll(Map<String, Restaurant> replacements) {
+        for (int i = 0; i < myRestaurants.size(); i++) {
+            Restaurant r = replacements.get(myRestaurants.get(i).getID());
+            if (r != null) {
+                myRestaurants.set(i, r);
+            }
+        }
+    }
+
+    /**
+     * <p>Returns the length (in kilometres) of the path visiting the
+     * ordering front to back.</p>
+     *
+     * @return The length of the path.
+     */
+    public double length() {
+        return DistanceKernel.pathLength(myXs, myYs, myRestaurants.size());
+    }
+}
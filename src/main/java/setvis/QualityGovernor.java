@@ -0,0 +1,133 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.util.Arrays;
+
+/**
+ * <p>Holds draw times to a budget by trading {@link RenderQuality} for
+ * them. It is told, after every frame, how long the frame took and how
+ * much of that went to the stages quality affects (curves and markers);
+ * both are smoothed into exponentially weighted moving averages.</p>
+ *
+ * <p>When the average frame exceeds the budget, quality steps down a
+ * level. It steps back up only when the frame <em>predicted</em> at the
+ * level above fits comfortably (within {@link #HEADROOM} of the budget);
+ * the prediction scales the scalable stages by how much cheaper they got
+ * the last time quality stepped down from that level. After any change
+ * the averages are given {@link #SETTLE_FRAMES} frames to catch up before
+ * quality moves again. Together these keep it from flickering between two
+ * levels at the edge of the budget.</p>
+ *
+ * <p>A governor is not thread-safe; it is meant to be driven from the
+ * animation thread.</p>
+ */
+public final class QualityGovernor {
+
+    /**
+     * <p>The weight of the newest frame in the moving averages.</p>
+     */
+    public static final double SMOOTHING = 0.2;
+
+    /**
+     * <p>The share of the budget the frame predicted at a better level
+     * must stay under for quality to step up.</p>
+     */
+    public static final double HEADROOM = 0.7;
+
+    public static final int SETTLE_FRAMES = 15;
+
+    //assumed until a step down has measured it
+    private static final double DEFAULT_UPGRADE_COST = 2;
+
+    private static final RenderQuality[] LEVELS = RenderQuality.values();
+
+    private final double myBudget;
+    private int myLevel;
+    private int myFramesAtLevel;
+
+    private double myFrame = -1, myScalable;
+
+    //how many times costlier the scalable stages are one level up
+    private final double[] myUpgradeCost = new double[LEVELS.length];
+    private double myCostBeforeStep = -1;
+
+    /**
+     * <p>Creates a governor starting out at {@link RenderQuality#FULL}.</p>
+     *
+     * @param budgetMicros The longest a frame should take to draw, in
+     *      microseconds.
+     *
+     * @throws IllegalArgumentException If <code>budgetMicros</code> is not
+     *      positive.
+     */
+    public QualityGovernor(long budgetMicros) {
+        if (budgetMicros <= 0) {
+            throw new IllegalArgumentException("The frame budget must be"
+                    + " positive.");
+        }
+        myBudget = budgetMicros;
+        Arrays.fill(myUpgradeCost, DEFAULT_UPGRADE_COST);
+    }
+
+    public RenderQuality getQuality() {
+        return LEVELS[myLevel];
+    }
+
+    /**
+     * <p>Accounts for a frame just drawn and returns the quality to draw
+     * the next one at.</p>
+     *
+     * @param frameMicros How long the whole frame took.
+     * @param scalableMicros How much of that went to stages that
+     *      {@link RenderQuality} affects.
+     *
+     * @return The quality for the next frame.
+     */
+    public RenderQuality frame(long frameMicros, long scalableMicros) {
+        if (myFrame < 0) {
+            myFrame = frameMicros;
+            myScalable = scalableMicros;
+        }
+        else {
+            myFrame += SMOOTHING * (frameMicros - myFrame);
+            myScalable += SMOOTHING * (scalableMicros - myScalable);
+        }
+        if (++myFramesAtLevel < SETTLE_FRAMES) {
+            return getQuality();
+        }
+        if (myCostBeforeStep >= 0) {
+            //the averages now reflect this level: see what stepping saved
+            myUpgradeCost[myLevel] = Math.max(1,
+                    myCostBeforeStep / Math.max(1, myScalable));
+            myCostBeforeStep = -1;
+        }
+
+        if (myFrame > myBudget && myLevel < LEVELS.length - 1) {
+            myCostBeforeStep = myScalable;
+            myLevel++;
+            myFramesAtLevel = 0;
+        }
+        else if (myLevel > 0 && myFrame - myScalable
+                + myScalable * myUpgradeCost[myLevel] < HEADROOM * myBudget) {
+            myLevel--;
+            myFramesAtLevel = 0;
+        }
+        return getQuality();
+    }
+}
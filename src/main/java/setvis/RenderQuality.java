@@ -0,0 +1,82 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+/**
+ * <p>How finely the curves and markers are drawn, from best to cheapest.
+ * Each level gives up some fidelity of the last: fewer segments per curve
+ * span, thinner (cheaper to rasterize) strokes, paths simplified for a
+ * coarser zoom level than the one shown and, at the bottom, markers drawn
+ * as a single ring rather than one per active category, and straight
+ * segments in place of curves.</p>
+ */
+public enum RenderQuality {
+
+    FULL(20, 7, 0, true),
+    REDUCED(8, 5, 0, true),
+    LOW(4, 3, 1, false),
+    MINIMAL(0, 2, 2, false);
+
+    private final int myCurveDetail;
+    private final float myCurveWeight;
+    private final int myZoomOffset;
+    private final boolean myDetailedMarkers;
+
+    RenderQuality(int curveDetail, float curveWeight, int zoomOffset,
+            boolean detailedMarkers) {
+        myCurveDetail = curveDetail;
+        myCurveWeight = curveWeight;
+        myZoomOffset = zoomOffset;
+        myDetailedMarkers = detailedMarkers;
+    }
+
+    /**
+     * <p>Returns the number of segments each span of a curve is drawn
+     * with, or <code>0</code> if paths should be drawn as straight
+     * segments.</p>
+     *
+     * @return A curve detail.
+     */
+    public int getCurveDetail() {
+        return myCurveDetail;
+    }
+
+    public float getCurveWeight() {
+        return myCurveWeight;
+    }
+
+    /**
+     * <p>Returns how many zoom levels coarser than the one shown the paths
+     * drawn are simplified for (see {@link PathPyramid#forZoom(int)}).</p>
+     *
+     * @return A number of zoom levels.
+     */
+    public int getZoomOffset() {
+        return myZoomOffset;
+    }
+
+    /**
+     * <p>Returns whether markers draw a ring per active category (see
+     * {@link RestaurantMarker#setDetailed(boolean)}).</p>
+     *
+     * @return Whether markers are drawn in full.
+     */
+    public boolean hasDetailedMarkers() {
+        return myDetailedMarkers;
+    }
+}
@@ -19,6 +19,11 @@ package setvis;
 
 import de.fhpotsdam.unfolding.geo.Location;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
 /**
  * <p>A <code>Restaurant</code> encapsulates all relevant metadata pulled
  * from the {@link processing.data.JSONObject} given by the <tt>yelpAPI</tt>
@@ -173,6 +178,11 @@ public class Restaurant {
     private final RestaurantType myType;
     private final RestaurantRating myRating;
 
+    //the total number of reviews, and the times and ratings of those known
+    private final int myReviews;
+    private final long[] myReviewTimes;
+    private final float[] myReviewRatings;
+
     private Restaurant(RestaurantBuilder builder) {
         myName = builder.myName;
         myID = builder.myID;
@@ -181,12 +191,20 @@ public class Restaurant {
         myType = builder.myType;
         myRating = builder.myRating;
         myReviewCount = builder.myReviewCount;
+
+        myReviews = builder.myReviews;
+        myReviewTimes = builder.myReviewTimes;
+        myReviewRatings = builder.myReviewRatings;
     }
 
     public String getName() {
         return myName;
     }
 
+    public String getID() {
+        return myID;
+    }
+
     public Location getLocation() {
         return myLocation;
     }
@@ -203,6 +221,76 @@ public class Restaurant {
         return myRating;
     }
 
+    /**
+     * <p>Returns the total number of reviews this restaurant has received,
+     * which may be more than the dataset carries.</p>
+     *
+     * @return The number of reviews.
+     */
+    public int getReviews() {
+        return myReviews;
+    }
+
+    /**
+     * <p>Returns when each review carried by the dataset was written, in
+     * seconds since the epoch, oldest first.</p>
+     *
+     * @return A new array.
+     */
+    public long[] getReviewTimes() {
+        return myReviewTimes.clone();
+    }
+
+    /**
+     * <p>Returns the rating (in stars) given by each review carried by the
+     * dataset, in the order of {@link #getReviewTimes()}.</p>
+     *
+     * @return A new array.
+     */
+    public float[] getReviewRatings() {
+        return myReviewRatings.clone();
+    }
+
+    /**
+     * <p>Returns every category this restaurant belongs to: its type, its
+     * rating and its review count.</p>
+     *
+     * @return The categories of this restaurant.
+     */
+    public List<RestaurantCategory> getCategories() {
+        return Collections.unmodifiableList(Arrays.<RestaurantCategory>asList(
+                myType, myRating, myReviewCount));
+    }
+
+    /**
+     * <p>Returns <code>true</code> iff <code>o</code> sits at the same
+     * location and falls into the same categories as this restaurant, i.e.,
+     * iff swapping one for the other leaves every ordering valid.</p>
+     *
+     * @param o Another restaurant (typically a newer version of this one).
+     *
+     * @return Whether or not <code>o</code> is placed identically.
+     */
+    public boolean isPlacedLike(Restaurant o) {
+        return myLocation.getLat() == o.myLocation.getLat()
+                && myLocation.getLon() == o.myLocation.getLon()
+                && myType == o.myType && myRating == o.myRating
+                && myReviewCount == o.myReviewCount;
+    }
+
+    /**
+     * <p>Returns <code>true</code> iff <code>o</code> is, field for field,
+     * the same restaurant as this one.</p>
+     *
+     * @param o Another restaurant.
+     *
+     * @return Whether or not <code>o</code> carries identical data.
+     */
+    public boolean hasSameAttributes(Restaurant o) {
+        return myID.equals(o.myID) && myName.equals(o.myName)
+                && isPlacedLike(o);
+    }
+
     public int hashCode() {
         return myID.hashCode();
     }
@@ -231,10 +319,32 @@ public class Restaurant {
         private RestaurantType myType;
         private RestaurantRating myRating;
 
+        private int myReviews;
+        private long[] myReviewTimes = new long[0];
+        private float[] myReviewRatings = new float[0];
+
         public RestaurantBuilder(String name) {
             myName = name;
         }
 
+        /**
+         * <p>Starts from a copy of <code>r</code>, e.g. to build a version
+         * of it in other categories.</p>
+         *
+         * @param r A restaurant.
+         */
+        public RestaurantBuilder(Restaurant r) {
+            myName = r.myName;
+            myID = r.myID;
+            myLocation = r.myLocation;
+            myType = r.myType;
+            myRating = r.myRating;
+            myReviewCount = r.myReviewCount;
+            myReviews = r.myReviews;
+            myReviewTimes = r.myReviewTimes;
+            myReviewRatings = r.myReviewRatings;
+        }
+
         public RestaurantBuilder location(float latitude, float longitude) {
             return location(new Location(latitude, longitude));
         }
@@ -268,6 +378,47 @@ public class Restaurant {
             return this;
         }
 
+        /**
+         * <p>Sets the review history: <code>total</code> reviews in all, of
+         * which the dataset carries those written at <code>times</code>
+         * (seconds since the epoch) with <code>ratings</code>.</p>
+         *
+         * @param total The total number of reviews.
+         * @param times When each known review was written.
+         * @param ratings The stars given by each known review.
+         *
+         * @throws IllegalArgumentException If <code>times</code> and
+         *      <code>ratings</code> differ in length.
+         *
+         * @return This builder.
+         */
+        public RestaurantBuilder reviews(int total, long[] times,
+                float[] ratings) {
+            if (times.length != ratings.length) {
+                throw new IllegalArgumentException("Every review needs both"
+                        + " a time and a rating.");
+            }
+            //kept oldest first
+            Integer[] order = new Integer[times.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            final long[] unsorted = times;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override public int compare(Integer a, Integer b) {
+                    return Long.compare(unsorted[a], unsorted[b]);
+                }
+            });
+            myReviews = total;
+            myReviewTimes = new long[times.length];
+            myReviewRatings = new float[times.length];
+            for (int i = 0; i < order.length; i++) {
+                myReviewTimes[i] = times[order[i]];
+                myReviewRatings[i] = ratings[order[i]];
+            }
+            return this;
+        }
+
         @Override
         public Restaurant build() {
             if (myType == null || myRating == null || myReviewCount == null) {
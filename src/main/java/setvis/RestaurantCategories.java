@@ -0,0 +1,75 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import setvis.Restaurant.RestaurantRating;
+import setvis.Restaurant.RestaurantReviewCount;
+import setvis.Restaurant.RestaurantType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Static helpers for enumerating and looking up every
+ * {@link RestaurantCategory}.</p>
+ */
+public class RestaurantCategories {
+
+    private static final List<RestaurantCategory> ALL;
+
+    static {
+        List<RestaurantCategory> all = new ArrayList<>();
+        all.addAll(Arrays.asList(RestaurantType.values()));
+        all.addAll(Arrays.asList(RestaurantRating.values()));
+        all.addAll(Arrays.asList(RestaurantReviewCount.values()));
+        ALL = Collections.unmodifiableList(all);
+    }
+
+    /**
+     * <p>Returns every category, types first, then ratings, then review
+     * counts.</p>
+     *
+     * @return All categories.
+     */
+    public static List<RestaurantCategory> all() {
+        return ALL;
+    }
+
+    /**
+     * <p>Returns the category whose enum constant is named
+     * <code>name</code> (ignoring case), e.g. <code>american</code> or
+     * <code>four_point_five</code>.</p>
+     *
+     * @param name The name of a category.
+     *
+     * @throws IllegalArgumentException If no category is named
+     *      <code>name</code>.
+     *
+     * @return The matching category.
+     */
+    public static RestaurantCategory forName(String name) {
+        for (RestaurantCategory category : ALL) {
+            if (category.toString().equalsIgnoreCase(name.trim())) {
+                return category;
+            }
+        }
+        throw new IllegalArgumentException("Unknown category: " + name + ".");
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * <p>Decides which records of a dataset are worth loading: those inside a
+ * bounding box that belong to at least one of a set of categories. The
+ * checks take raw coordinates and categories, so that records can be
+ * turned away before any {@link Restaurant} is built for them.</p>
+ */
+public final class RestaurantFilter {
+
+    /**
+     * <p>Accepts every record.</p>
+     */
+    public static final RestaurantFilter ALL = new RestaurantFilter(-90, -180,
+            90, 180, Collections.<RestaurantCategory>emptySet());
+
+    private final double myMinLatitude, myMinLongitude;
+    private final double myMaxLatitude, myMaxLongitude;
+    private final Set<RestaurantCategory> myCategories;
+
+    private RestaurantFilter(double minLatitude, double minLongitude,
+            double maxLatitude, double maxLongitude,
+            Set<RestaurantCategory> categories) {
+        if (minLatitude > maxLatitude || minLongitude > maxLongitude) {
+            throw new IllegalArgumentException("Empty bounding box: "
+                    + minLatitude + "," + minLongitude + "," + maxLatitude
+                    + "," + maxLongitude + ".");
+        }
+        myMinLatitude = minLatitude;
+        myMinLongitude = minLongitude;
+        myMaxLatitude = maxLatitude;
+        myMaxLongitude = maxLongitude;
+        myCategories = categories;
+    }
+
+    /**
+     * <p>Returns a filter like this one that only accepts records inside
+     * the given bounding box.</p>
+     *
+     * @param minLatitude The southern edge.
+     * @param minLongitude The western edge.
+     * @param maxLatitude The northern edge.
+     * @param maxLongitude The eastern edge.
+     *
+     * @return The narrowed filter.
+     */
+    public RestaurantFilter within(double minLatitude, double minLongitude,
+            double maxLatitude, double maxLongitude) {
+        return new RestaurantFilter(minLatitude, minLongitude, maxLatitude,
+                maxLongitude, myCategories);
+    }
+
+    /**
+     * <p>Returns a filter like this one that only accepts records belonging
+     * to at least one of <code>categories</code>; an empty collection
+     * accepts any.</p>
+     *
+     * @param categories The categories of interest.
+     *
+     * @return The narrowed filter.
+     */
+    public RestaurantFilter inAnyOf(Collection<RestaurantCategory> categories) {
+        return new RestaurantFilter(myMinLatitude, myMinLongitude,
+                myMaxLatitude, myMaxLongitude, Collections.unmodifiableSet(
+                        new HashSet<>(categories)));
+    }
+
+    public boolean acceptsLocation(double latitude, double longitude) {
+        return latitude >= myMinLatitude && latitude <= myMaxLatitude
+                && longitude >= myMinLongitude && longitude <= myMaxLongitude;
+    }
+
+    public boolean acceptsCategories(RestaurantCategory... categories) {
+        if (myCategories.isEmpty()) {
+            return true;
+        }
+        for (RestaurantCategory c : categories) {
+            if (myCategories.contains(c)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isBounded() {
+        return myMinLatitude > -90 || myMinLongitude > -180
+                || myMaxLatitude < 90 || myMaxLongitude < 180;
+    }
+}
@@ -21,7 +21,7 @@ import de.fhpotsdam.unfolding.marker.*;
 import de.fhpotsdam.unfolding.geo.*;
 import processing.core.*;
 
-import java.util.LinkedHashSet;
+import java.util.Collections;
 import java.util.Set;
 
 /**
@@ -32,7 +32,9 @@ import java.util.Set;
  */
 public class RestaurantMarker extends SimplePointMarker {
 
-    private Set<RestaurantCategory> myActiveIntersections = new LinkedHashSet<>();
+    private Set<RestaurantCategory> myActiveIntersections =
+            Collections.emptySet();
+    private boolean myDetailed = true;
     protected String myName;
     protected int space = 10;
 
@@ -51,12 +53,27 @@ public class RestaurantMarker extends SimplePointMarker {
         return myName;
     }
 
-    public void addIntersection(RestaurantCategory category) {
-        myActiveIntersections.add(category);
+    /**
+     * <p>Replaces the active intersections drawn around this marker. The
+     * given set is expected to be immutable (see
+     * {@link SelectionSnapshot#getIntersections(Restaurant)}) and should only
+     * be swapped in from the animation thread.</p>
+     *
+     * @param categories The active categories this marker belongs to.
+     */
+    public void setIntersections(Set<RestaurantCategory> categories) {
+        myActiveIntersections = categories;
     }
 
-    public void removeIntersection(RestaurantCategory category) {
-        myActiveIntersections.remove(category);
+    /**
+     * <p>Chooses between drawing a ring per active intersection and, more
+     * cheaply, a single thinner ring in the color of the first (see
+     * {@link RenderQuality#hasDetailedMarkers()}).</p>
+     *
+     * @param detailed Whether to draw every ring.
+     */
+    public void setDetailed(boolean detailed) {
+        myDetailed = detailed;
     }
 
     /**
@@ -76,9 +93,10 @@ public class RestaurantMarker extends SimplePointMarker {
         int initialSize = 13;
         for (RestaurantCategory category : myActiveIntersections) {
             pg.noFill();
-            pg.strokeWeight(5);
+            pg.strokeWeight(myDetailed ? 5 : 3);
             pg.stroke(category.getAssignedColor());
             pg.ellipse(x, y, initialSize, initialSize);
+            if (!myDetailed) { break; }
             initialSize += 10;
         }
         pg.strokeWeight(strokeWeight);
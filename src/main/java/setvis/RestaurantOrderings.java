@@ -0,0 +1,132 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>A small collection of static helpers for computing the order in which
+ * a category's curve visits its restaurants. (Orderings are maintained
+ * incrementally by {@link ProjectedOrdering}.)</p>
+ *
+ * <p>All distances are taken in a {@link PlanarProjection} of the
+ * restaurants involved, through {@link DistanceKernel}.</p>
+ */
+public class RestaurantOrderings {
+
+    /**
+     * <p>Computes an ordering of <code>restaurants</code> by walking a
+     * minimum spanning tree of the complete distance graph depth first.</p>
+     *
+     * <p>The tree is grown with Prim's algorithm over the dense distance
+     * matrix, one kernel row at a time, in <code>O(n<sup>2</sup>)</code>
+     * time and <code>O(n)</code> space. Vertices are numbered along a
+     * {@link HilbertCurve}, so neighbours in the tree are mostly neighbours
+     * in its arrays too, and the walk starts at one end of the curve.</p>
+     *
+     * @param restaurants The restaurants of a single category.
+     *
+     * @return A new, mutable ordering.
+     */
+    public static List<Restaurant> compute(Collection<Restaurant> restaurants) {
+        List<Restaurant> input = HilbertCurve.sort(restaurants);
+        int n = input.size();
+        if (n < 3) {
+            return input;
+        }
+        float[] xs = new float[n], ys = new float[n];
+        PlanarProjection.around(input).project(input, xs, ys);
+
+        int[] parent = spanningTree(xs, ys, n);
+
+        //children lists, packed in the order vertices joined the tree
+        int[] childCount = new int[n + 1];
+        for (int v = 1; v < n; v++) {
+            childCount[parent[v] + 1]++;
+        }
+        for (int v = 0; v < n; v++) {
+            childCount[v + 1] += childCount[v];
+        }
+        int[] children = new int[n];
+        int[] fill = Arrays.copyOf(childCount, n);
+        for (int i = 0; i < n - 1; i++) {
+            int v = parent[n + i];
+            children[fill[parent[v]]++] = v;
+        }
+
+        //preorder walk from the root
+        List<Restaurant> result = new ArrayList<>(n);
+        int[] stack = new int[n];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int v = stack[--top];
+            result.add(input.get(v));
+
+            for (int c = childCount[v + 1] - 1; c >= childCount[v]; c--) {
+                stack[top++] = children[c];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * <p>Grows a minimum spanning tree from vertex <code>0</code>.</p>
+     *
+     * @return An array whose first <code>n</code> entries give each
+     *      vertex's parent (the root's is <code>-1</code>) and whose next
+     *      <code>n - 1</code> entries list the vertices in the order they
+     *      joined the tree.
+     */
+    private static int[] spanningTree(float[] xs, float[] ys, int n) {
+        int[] result = new int[2 * n - 1];
+        float[] best = new float[n];
+        float[] row = new float[n];
+        boolean[] inTree = new boolean[n];
+
+        //every vertex starts out hanging off the root
+        result[0] = -1;
+        inTree[0] = true;
+        DistanceKernel.distancesFrom(xs, ys, n, xs[0], ys[0], best);
+
+        for (int added = 0; added < n - 1; added++) {
+            int next = -1;
+            float nextDistance = Float.POSITIVE_INFINITY;
+            for (int v = 0; v < n; v++) {
+                if (!inTree[v] && best[v] < nextDistance) {
+                    nextDistance = best[v];
+                    next = v;
+                }
+            }
+            inTree[next] = true;
+            result[n + added] = next;
+
+            DistanceKernel.distancesFrom(xs, ys, n, xs[next], ys[next], row);
+            for (int v = 0; v < n; v++) {
+                if (!inTree[v] && row[v] < best[v]) {
+                    best[v] = row[v];
+                    result[v] = next;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import processing.core.PApplet;
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+import setvis.Restaurant.RestaurantBuilder;
+import setvis.Restaurant.RestaurantRating;
+import setvis.Restaurant.RestaurantReviewCount;
+import setvis.Restaurant.RestaurantType;
+import setvis.metrics.Distribution;
+import setvis.metrics.Meter;
+import setvis.metrics.Metrics;
+import setvis.metrics.StripedCounter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * <p>Turns the raw <tt>JSON</tt> search results given by the
+ * <tt>yelpAPI</tt> into {@link Restaurant}s. Kept apart from the sketch so
+ * that datasets can be (re)loaded from any thread.</p>
+ */
+public class RestaurantParser {
+
+    /**
+     * <p>The dataset bundled with the application, used whenever no other
+     * dataset is given.</p>
+     */
+    public static final String DEFAULT_DATASET =
+            "yelp_restaurants_categorized_full.json";
+
+    //shared with NdjsonIngestor, which skips bad lines instead of failing
+    static final Meter INGESTED = Metrics.meter("ingest.records");
+    static final Meter ACCEPTED = Metrics.meter("ingest.accepted");
+    static final StripedCounter FILTERED = Metrics.counter("ingest.filtered");
+    static final StripedCounter INVALID = Metrics.counter("ingest.invalid");
+    static final StripedCounter DUPLICATES =
+            Metrics.counter("ingest.duplicates");
+    private static final StripedCounter UNCATEGORIZED =
+            Metrics.counter("ingest.uncategorized");
+    private static final Distribution INGEST_MILLIS =
+            Metrics.distribution("ingest.millis");
+
+    /**
+     * <p>Reads and parses the restaurants in {@link #DEFAULT_DATASET}.</p>
+     *
+     * @return The parsed restaurants, in file order.
+     */
+    public List<Restaurant> parseBundled() {
+        return parseBundled(RestaurantFilter.ALL);
+    }
+
+    /**
+     * <p>Reads and parses the restaurants in {@link #DEFAULT_DATASET}
+     * accepted by <code>filter</code>.</p>
+     *
+     * @param filter Which restaurants to keep.
+     *
+     * @return The parsed restaurants, in file order.
+     */
+    public List<Restaurant> parseBundled(RestaurantFilter filter) {
+        return parse(readBundled(), filter);
+    }
+
+    /**
+     * <p>Reads the raw <tt>JSON</tt> array in {@link #DEFAULT_DATASET}.</p>
+     *
+     * @return The unparsed dataset.
+     */
+    public static JSONArray readBundled() {
+        InputStream in = RestaurantParser.class.getResourceAsStream("/"
+                + DEFAULT_DATASET);
+        if (in == null) {
+            throw new IllegalStateException("Missing bundled dataset: "
+                    + DEFAULT_DATASET + ".");
+        }
+        try (Reader reader = new InputStreamReader(in,
+                StandardCharsets.UTF_8)) {
+            return new JSONArray(reader);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Unable to read bundled dataset.",
+                    e);
+        }
+    }
+
+    /**
+     * <p>Reads and parses every restaurant in the <tt>JSON</tt> array stored
+     * in <code>file</code>.</p>
+     *
+     * @param file A dataset file.
+     *
+     * @return The parsed restaurants, in file order.
+     */
+    public List<Restaurant> parse(File file) {
+        return parse(file, RestaurantFilter.ALL);
+    }
+
+    /**
+     * <p>Reads and parses the restaurants in <code>file</code> accepted by
+     * <code>filter</code>. Line-delimited files (see
+     * {@link NdjsonIngestor#accepts(File)}) are read in parallel; anything
+     * else should hold a single <tt>JSON</tt> array.</p>
+     *
+     * @param file A dataset file.
+     * @param filter Which restaurants to keep.
+     *
+     * @return The parsed restaurants, in file order.
+     */
+    public List<Restaurant> parse(File file, RestaurantFilter filter) {
+        long start = System.nanoTime();
+        List<Restaurant> result;
+        if (NdjsonIngestor.accepts(file)) {
+            try {
+                result = new NdjsonIngestor(this, filter).ingest(file);
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("Unable to read dataset: "
+                        + file + ".", e);
+            }
+        }
+        else {
+            JSONArray rawData = PApplet.loadJSONArray(file);
+            if (rawData == null) {
+                throw new IllegalStateException("Unable to read dataset: "
+                        + file + ".");
+            }
+            result = parse(rawData, filter);
+        }
+        INGEST_MILLIS.record((System.nanoTime() - start) / 1000000);
+        return result;
+    }
+
+    public List<Restaurant> parse(JSONArray rawData) {
+        return parse(rawData, RestaurantFilter.ALL);
+    }
+
+    public List<Restaurant> parse(JSONArray rawData,
+            RestaurantFilter filter) {
+        List<Restaurant> result = new ArrayList<>(rawData.size());
+        Set<String> seen = new HashSet<>();
+
+        for (int i = 0; i < rawData.size(); i++) {
+            JSONObject o = rawData.getJSONObject(i);
+            sanityCheckRestaurant(seen, o.getString("id"));
+
+            INGESTED.mark();
+            Restaurant r = parse(o, filter);
+            if (r != null) {
+                result.add(r);
+                ACCEPTED.mark();
+            }
+            else {
+                FILTERED.increment();
+            }
+        }
+        return result;
+    }
+
+    public Restaurant parse(JSONObject o) {
+        return parse(o, RestaurantFilter.ALL);
+    }
+
+    /**
+     * <p>Parses <code>o</code>, unless <code>filter</code> turns it away.
+     * The filter sees the raw coordinates and categories, so a
+     * {@link RestaurantBuilder} is only made for accepted records.</p>
+     *
+     * @param o The raw <tt>JSON</tt> object as provided by the yelp API.
+     * @param filter Which restaurants to keep.
+     *
+     * @throws IllegalStateException If <code>o</code> has an unrecognizable
+     *      restaurant type.
+     * @throws IllegalArgumentException If <code>o</code> has an unknown
+     *      rating.
+     *
+     * @return The restaurant, or <code>null</code> if it is filtered out.
+     */
+    public Restaurant parse(JSONObject o, RestaurantFilter filter) {
+        JSONObject coord = o.getJSONObject("location")
+                .getJSONObject("coordinate");
+        float latitude = coord.getFloat("latitude");
+        float longitude = coord.getFloat("longitude");
+        if (!filter.acceptsLocation(latitude, longitude)) {
+            return null;
+        }
+
+        RestaurantType type = getType(o, o.getJSONArray("categories"));
+        RestaurantRating rating = getRating(o.getDouble("rating"));
+        RestaurantReviewCount count = getReviewCt(o.getDouble("review_count"));
+        if (!filter.acceptsCategories(type, rating, count)) {
+            return null;
+        }
+
+        RestaurantBuilder restaurant =
+                new RestaurantBuilder(o.getString("name"))
+                    .id(o.getString("id"))
+                    .type(type)
+                    .rating(rating)
+                    .reviewCount(count)
+                    .location(latitude, longitude);
+        addReviews(restaurant, o);
+
+        return restaurant.build();
+    }
+
+    /**
+     * <p>Copies the total number of reviews of <code>o</code>, and the time
+     * and rating of each review it carries, into
+     * <code>restaurant</code>.</p>
+     */
+    private void addReviews(RestaurantBuilder restaurant, JSONObject o) {
+        JSONArray reviews = o.hasKey("reviews")
+                ? o.getJSONArray("reviews") : new JSONArray();
+        long[] times = new long[reviews.size()];
+        float[] ratings = new float[reviews.size()];
+
+        for (int i = 0; i < reviews.size(); i++) {
+            JSONObject review = reviews.getJSONObject(i);
+            times[i] = review.getLong("time_created");
+            ratings[i] = review.getFloat("rating");
+        }
+        restaurant.reviews(o.getInt("review_count"), times, ratings);
+    }
+
+    /**
+     * <p>Returns the <code>RestaurantType</code> for {@link JSONObject}
+     * <code>entry</code.></p>
+     *
+     * @param entry The raw <tt>JSON</tt> object as provided by the yelp API.
+     * @param categories Different categories for <code>entry</code>.
+     *
+     * @throws IllegalStateException If <code>entry</code> has an unrecognizable
+     *      restaurant type.
+     *
+     * @return
+     */
+    private RestaurantType getType(JSONObject entry, JSONArray categories) {
+        Restaurant.RestaurantType result = null;
+
+        for (int i = 0; i < categories.size(); i++) {
+            result = searchInnerCategory(categories.getJSONArray(i));
+            if (result != null) { break; }
+        }
+
+        if (result == null) {
+            UNCATEGORIZED.increment();
+            throw new UncategorizedException("Unable to categorize"
+                    + " restaurant: " + entry.getString("name") + ".");
+        }
+        return result;
+    }
+
+    private Restaurant.RestaurantType searchInnerCategory(JSONArray category) {
+        Restaurant.RestaurantType result = null;
+        for (int i = 0; i < category.size(); i++) {
+            for (Restaurant.RestaurantType t :
+                    Restaurant.RestaurantType.values()) {
+                if (t.acceptableFor(category.getString(i))) { result = t; }
+            }
+        }
+        return result;
+    }
+
+    public RestaurantReviewCount getReviewCt(double count) {
+        RestaurantReviewCount result = null;
+
+        if (count <= 100) {
+            result = RestaurantReviewCount.SMALL_COUNT;
+        }
+        else if (count > 100 && count < 300) {
+            result = RestaurantReviewCount.MEDIUM_COUNT;
+        }
+        else {
+            result = RestaurantReviewCount.LARGE_COUNT;
+        }
+        return result;
+    }
+
+    public RestaurantRating getRating(double rating) {
+        RestaurantRating result = null;
+
+        if (rating == 3.0) {
+            result = RestaurantRating.THREE;
+        }
+        else if (rating == 3.5) {
+            result = RestaurantRating.THREE_POINT_FIVE;
+        }
+        else if (rating == 4.0) {
+            result = RestaurantRating.FOUR;
+        }
+        else if (rating == 4.5) {
+            result = RestaurantRating.FOUR_POINT_FIVE;
+        }
+        else {
+            throw new IllegalArgumentException("Unknown rating: " + rating
+                    + ". Use the range (3.0 - 4.5) with increments of .5.");
+        }
+        return result;
+    }
+
+    /**
+     * <p>Sounds the alarm if the entry we're trying to add shares an ID
+     * with an entry already added.</p>
+     *
+     * @param seenAlready The set of entry IDs already parsed.
+     * @param id A candidate ID.
+     */
+    private void sanityCheckRestaurant(Set<String> seenAlready, String id) {
+        if (seenAlready.contains(id)) {
+            throw new IllegalStateException("Duplicate id: " + id);
+        }
+    }
+
+    /**
+     * <p>Thrown for records none of whose categories is a known
+     * {@link Restaurant.RestaurantType}; already counted as
+     * <tt>ingest.uncategorized</tt> when thrown.</p>
+     */
+    static final class UncategorizedException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        UncategorizedException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import setvis.DatasetDelta.Update;
+import setvis.metrics.Gauge;
+import setvis.metrics.Metrics;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Holds the loaded restaurants (keyed by yelp <code>id</code>) and the
+ * current ordering of every category.</p>
+ *
+ * <p>A store has a single writer at a time, but may be read from any
+ * thread: orderings are immutable lists that are only ever replaced
+ * wholesale. The writer also keeps each ordering as a
+ * {@link ProjectedOrdering}, which {@link #apply} edits in place.</p>
+ *
+ * <p>Restaurants are laid out along a {@link HilbertCurve}: that is the
+ * order {@link #getRestaurants()} returns them in, and the order of every
+ * category's members until its ordering is computed, so that neighbours on
+ * the map are mostly neighbours in either list. The layout is kept sorted
+ * by Hilbert key, and {@link #apply} merges a change into it rather than
+ * sorting everything again.</p>
+ *
+ * <p>The time taken to compute each category's ordering, and the length of
+ * its current tour, are published through {@link Metrics} (for the most
+ * recently created store).</p>
+ */
+public class RestaurantStore {
+
+    private final ConcurrentMap<String, Restaurant> myRestaurants =
+            new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<RestaurantCategory, List<Restaurant>> myOrderings =
+            new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<RestaurantCategory, ProjectedOrdering>
+            myProjected = new ConcurrentHashMap<>();
+    private final ConcurrentMap<RestaurantCategory, Double> myLengths =
+            new ConcurrentHashMap<>();
+
+    /**
+     * <p>The order of the Hilbert keys of the layout: cells of a few
+     * centimetres, so ties are rare.</p>
+     */
+    private static final int LAYOUT_ORDER = 31;
+
+    private volatile List<Restaurant> myLayout = Collections.emptyList();
+    //the Hilbert key of each restaurant in myLayout; only the writer reads it
+    private long[] myLayoutKeys = new long[0];
+
+    private final AtomicLong myVersion = new AtomicLong();
+
+    public RestaurantStore() {
+        for (final RestaurantCategory category : RestaurantCategories.all()) {
+            Metrics.gauge(metricName(category) + ".km", new Gauge() {
+                @Override public double value() {
+                    Double result = myLengths.get(category);
+                    return result == null ? 0 : result;
+                }
+            });
+        }
+    }
+
+    /**
+     * <p>Replaces the contents of this store with <code>restaurants</code>.
+     * Each category's ordering is left in layout order (a cheap tour to
+     * start from) until {@link #computeOrderings()} is called.</p>
+     *
+     * @param restaurants The complete dataset.
+     */
+    public void load(Collection<Restaurant> restaurants) {
+        Map<RestaurantCategory, List<Restaurant>> categories = new HashMap<>();
+        myRestaurants.clear();
+
+        for (Restaurant r : restaurants) {
+            myRestaurants.put(r.getID(), r);
+        }
+        myLayout = Collections.emptyList();
+        myLayoutKeys = new long[0];
+        updateLayout(Collections.<Restaurant>emptyList(),
+                myRestaurants.values());
+        for (Restaurant r : myLayout) {
+            for (RestaurantCategory category : r.getCategories()) {
+                List<Restaurant> members = categories.get(category);
+                if (members == null) {
+                    members = new ArrayList<>();
+                    categories.put(category, members);
+                }
+                members.add(r);
+            }
+        }
+        myOrderings.clear();
+        myProjected.clear();
+        myLengths.clear();
+        for (Map.Entry<RestaurantCategory, List<Restaurant>> e : categories
+                .entrySet()) {
+            setOrdering(e.getKey(), e.getValue());
+        }
+        myVersion.incrementAndGet();
+    }
+
+    public void computeOrderings() {
+        for (RestaurantCategory category : getCategories()) {
+            computeOrdering(category);
+        }
+    }
+
+    public void computeOrdering(RestaurantCategory category) {
+        long start = System.nanoTime();
+        setOrdering(category,
+                RestaurantOrderings.compute(getOrdering(category)));
+        Metrics.distribution(metricName(category) + ".millis").record(
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * <p>Returns every restaurant, along the {@link HilbertCurve}.</p>
+     *
+     * @return An immutable list.
+     */
+    public List<Restaurant> getRestaurants() {
+        return myLayout;
+    }
+
+    public Restaurant getRestaurant(String id) {
+        return myRestaurants.get(id);
+    }
+
+    public int size() {
+        return myRestaurants.size();
+    }
+
+    /**
+     * <p>Returns a number that changes whenever the restaurants or any
+     * ordering of this store do, so that anything derived from them can
+     * tell when it is stale.</p>
+     *
+     * @return The current version.
+     */
+    public long getVersion() {
+        return myVersion.get();
+    }
+
+    public Set<RestaurantCategory> getCategories() {
+        return Collections.unmodifiableSet(myOrderings.keySet());
+    }
+
+    /**
+     * <p>Returns the current ordering of <code>category</code>.</p>
+     *
+     * @param category A category.
+     *
+     * @return An immutable (possibly empty) ordering.
+     */
+    public List<Restaurant> getOrdering(RestaurantCategory category) {
+        List<Restaurant> result = myOrderings.get(category);
+        if (result == null) {
+            result = Collections.emptyList();
+        }
+        return result;
+    }
+
+    public void setOrdering(RestaurantCategory category,
+            List<Restaurant> ordering) {
+        publish(category, new ProjectedOrdering(ordering));
+    }
+
+    private void publish(RestaurantCategory category,
+            ProjectedOrdering ordering) {
+        if (ordering.size() == 0) {
+            myOrderings.remove(category);
+            myProjected.remove(category);
+            myLengths.remove(category);
+        }
+        else {
+            myOrderings.put(category, ordering.getRestaurants());
+            myProjected.put(category, ordering);
+            myLengths.put(category, ordering.length());
+        }
+        myVersion.incrementAndGet();
+    }
+
+    /**
+     * <p>Compares <code>fresh</code>, a newer version of the dataset, to the
+     * contents of this store by yelp <code>id</code>.</p>
+     *
+     * @param fresh The complete, newer dataset.
+     *
+     * @return The inserts, removals and updates leading from this store to
+     *      <code>fresh</code>.
+     */
+    public DatasetDelta diff(Collection<Restaurant> fresh) {
+        List<Restaurant> inserted = new ArrayList<>();
+        List<Restaurant> removed = new ArrayList<>();
+        List<Update> updated = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+
+        for (Restaurant r : fresh) {
+            if (!seen.add(r.getID())) { continue; }
+            Restaurant current = myRestaurants.get(r.getID());
+
+            if (current == null) {
+                inserted.add(r);
+            }
+            else if (!current.hasSameAttributes(r)) {
+                updated.add(new Update(current, r));
+            }
+        }
+        for (Restaurant r : myRestaurants.values()) {
+            if (!seen.contains(r.getID())) {
+                removed.add(r);
+            }
+        }
+        return new DatasetDelta(inserted, removed, updated);
+    }
+
+    /**
+     * <p>Applies <code>delta</code> to this store, touching only the
+     * orderings of categories it affects. Removed restaurants are dropped
+     * from their paths, inserted ones are spliced in wherever they lengthen
+     * the path least, and updates that leave a restaurant's location and
+     * categories alone are swapped in place.</p>
+     *
+     * @param delta The changes to apply.
+     *
+     * @return The categories whose orderings changed.
+     */
+    public Set<RestaurantCategory> apply(DatasetDelta delta) {
+        Map<RestaurantCategory, Set<Restaurant>> removals = new HashMap<>();
+        Map<RestaurantCategory, List<Restaurant>> insertions = new HashMap<>();
+        Map<RestaurantCategory, Map<String, Restaurant>> replacements =
+                new HashMap<>();
+        List<Restaurant> leaving = new ArrayList<>();
+        List<Restaurant> entering = new ArrayList<>();
+
+        for (Restaurant r : delta.getRemoved()) {
+            addIfPresent(leaving, myRestaurants.remove(r.getID()));
+            for (RestaurantCategory category : r.getCategories()) {
+                slot(removals, category, new HashSet<Restaurant>()).add(r);
+            }
+        }
+        for (Restaurant r : delta.getInserted()) {
+            addIfPresent(leaving, myRestaurants.put(r.getID(), r));
+            entering.add(r);
+            for (RestaurantCategory category : r.getCategories()) {
+                slot(insertions, category, new ArrayList<Restaurant>()).add(r);
+            }
+        }
+        for (Update u : delta.getUpdated()) {
+            Restaurant before = u.getBefore(), after = u.getAfter();
+            addIfPresent(leaving, myRestaurants.put(after.getID(), after));
+            entering.add(after);
+
+            if (before.isPlacedLike(after)) {
+                for (RestaurantCategory category : after.getCategories()) {
+                    slot(replacements, category,
+                            new HashMap<String, Restaurant>())
+                            .put(after.getID(), after);
+                }
+            }
+            else {
+                for (RestaurantCategory category : before.getCategories()) {
+                    slot(removals, category, new HashSet<Restaurant>())
+                            .add(before);
+                }
+                for (RestaurantCategory category : after.getCategories()) {
+                    slot(insertions, category, new ArrayList<Restaurant>())
+                            .add(after);
+                }
+            }
+        }
+
+        Set<RestaurantCategory> result = new HashSet<>();
+        result.addAll(removals.keySet());
+        result.addAll(insertions.keySet());
+        result.addAll(replacements.keySet());
+
+        for (RestaurantCategory category : result) {
+            ProjectedOrdering ordering = myProjected.get(category);
+            if (ordering == null) {
+                ordering = new ProjectedOrdering(getOrdering(category));
+            }
+
+            if (removals.containsKey(category)) {
+                ordering.removeAll(removals.get(category));
+            }
+            if (replacements.containsKey(category)) {
+                ordering.replaceAll(replacements.get(category));
+            }
+            if (insertions.containsKey(category)) {
+                ordering.insertAll(insertions.get(category));
+            }
+            publish(category, ordering);
+        }
+        updateLayout(leaving, entering);
+        myVersion.incrementAndGet();
+        return result;
+    }
+
+    /**
+     * <p>Publishes a new layout: the current one without
+     * <code>leaving</code> (restaurants in it), merged with
+     * <code>entering</code>. Only the entering restaurants are sorted; each
+     * leaving one is found by binary search on its key. Restaurants sharing
+     * a key keep their relative order, entering ones after those
+     * staying.</p>
+     */
+    private void updateLayout(Collection<Restaurant> leaving,
+            Collection<Restaurant> entering) {
+        List<Restaurant> layout = myLayout;
+        long[] keys = myLayoutKeys;
+
+        int[] gone = new int[leaving.size()];
+        int g = 0;
+        for (Restaurant r : leaving) {
+            gone[g++] = positionOf(r, layout, keys);
+        }
+        Arrays.sort(gone);
+
+        final Restaurant[] in = entering.toArray(new Restaurant[0]);
+        final long[] inKeys = new long[in.length];
+        Integer[] byKey = new Integer[in.length];
+        for (int i = 0; i < in.length; i++) {
+            inKeys[i] = layoutKey(in[i]);
+            byKey[i] = i;
+        }
+        Arrays.sort(byKey, new Comparator<Integer>() {
+            @Override public int compare(Integer a, Integer b) {
+                return Long.compare(inKeys[a], inKeys[b]);
+            }
+        });
+
+        Restaurant[] result = new Restaurant[keys.length + in.length];
+        long[] resultKeys = new long[result.length];
+        int n = 0, e = 0;
+        g = 0;
+        for (int i = 0; i <= keys.length; i++) {
+            long key = i < keys.length ? keys[i] : Long.MAX_VALUE;
+            while (e < in.length && inKeys[byKey[e]] < key) {
+                result[n] = in[byKey[e]];
+                resultKeys[n++] = inKeys[byKey[e++]];
+            }
+            if (i == keys.length) { break; }
+
+            boolean left = false;
+            while (g < gone.length && gone[g] == i) {
+                left = true;
+                g++;
+            }
+            if (!left) {
+                result[n] = layout.get(i);
+                resultKeys[n++] = key;
+            }
+        }
+        myLayoutKeys = Arrays.copyOf(resultKeys, n);
+        myLayout = Collections.unmodifiableList(Arrays.asList(
+                Arrays.copyOf(result, n)));
+    }
+
+    /**
+     * <p>Returns the index of <code>r</code> (the very object) in
+     * <code>layout</code>, whose keys are <code>keys</code>.</p>
+     */
+    private static int positionOf(Restaurant r, List<Restaurant> layout,
+            long[] keys) {
+        long key = layoutKey(r);
+        int i = Arrays.binarySearch(keys, key);
+        if (i >= 0) {
+            while (i > 0 && keys[i - 1] == key) { i--; }
+            for (; i < keys.length && keys[i] == key; i++) {
+                if (layout.get(i) == r) { return i; }
+            }
+        }
+        throw new IllegalStateException("Not laid out: " + r + ".");
+    }
+
+    private static long layoutKey(Restaurant r) {
+        return HilbertCurve.index(
+                MercatorProjection.worldX(r.getLocation().getLon()),
+                MercatorProjection.worldY(r.getLocation().getLat()),
+                LAYOUT_ORDER);
+    }
+
+    private static void addIfPresent(List<Restaurant> list, Restaurant r) {
+        if (r != null) {
+            list.add(r);
+        }
+    }
+
+    private static <K, V> V slot(Map<K, V> map, K key, V empty) {
+        V result = map.get(key);
+        if (result == null) {
+            result = empty;
+            map.put(key, result);
+        }
+        return result;
+    }
+
+    private static String metricName(RestaurantCategory category) {
+        return "ordering." + category.toString().toLowerCase(Locale.ROOT);
+    }
+}
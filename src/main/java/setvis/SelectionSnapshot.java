@@ -0,0 +1,175 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>An immutable view of the categories currently toggled on, the ordered
+ * restaurants making up each of their curves, and the intersections each
+ * restaurant participates in.</p>
+ *
+ * <p>Snapshots are built off the animation thread and handed to the
+ * renderer whole, so the draw loop never observes a selection that is only
+ * partially updated. The simplified paths of {@link #getPath} are derived
+ * lazily but deterministically, and {@link #precomputePaths()} lets the
+ * builder pay for them before publishing.</p>
+ */
+public final class SelectionSnapshot {
+
+    public static final SelectionSnapshot EMPTY = new SelectionSnapshot(
+            new LinkedHashMap<RestaurantCategory, List<Restaurant>>());
+
+    private final Map<RestaurantCategory, List<Restaurant>> myActiveSelections;
+    private final Map<Restaurant, Set<RestaurantCategory>> myIntersections;
+
+    private final ConcurrentMap<RestaurantCategory, PathPyramid> myPaths =
+            new ConcurrentHashMap<>();
+
+    private SelectionSnapshot(
+            LinkedHashMap<RestaurantCategory, List<Restaurant>> selections) {
+        myActiveSelections = Collections.unmodifiableMap(selections);
+
+        Map<Restaurant, Set<RestaurantCategory>> intersections = new HashMap<>();
+        for (Map.Entry<RestaurantCategory, List<Restaurant>> e : selections
+                .entrySet()) {
+            for (Restaurant r : e.getValue()) {
+                Set<RestaurantCategory> categories = intersections.get(r);
+                if (categories == null) {
+                    categories = new LinkedHashSet<>();
+                    intersections.put(r, categories);
+                }
+                categories.add(e.getKey());
+            }
+        }
+        for (Map.Entry<Restaurant, Set<RestaurantCategory>> e : intersections
+                .entrySet()) {
+            e.setValue(Collections.unmodifiableSet(e.getValue()));
+        }
+        myIntersections = Collections.unmodifiableMap(intersections);
+    }
+
+    /**
+     * <p>Returns a new snapshot identical to this one, except that
+     * <code>category</code> is active and drawn through
+     * <code>ordering</code>.</p>
+     *
+     * @param category The category being toggled on.
+     * @param ordering The ordered restaurants of <code>category</code>.
+     *
+     * @return The updated snapshot.
+     */
+    public SelectionSnapshot with(RestaurantCategory category,
+            List<Restaurant> ordering) {
+        LinkedHashMap<RestaurantCategory, List<Restaurant>> selections =
+                new LinkedHashMap<>(myActiveSelections);
+        selections.put(category, Collections.unmodifiableList(
+                new ArrayList<>(ordering)));
+        return new SelectionSnapshot(selections);
+    }
+
+    /**
+     * <p>Returns a new snapshot identical to this one, except that
+     * <code>category</code> is no longer active.</p>
+     *
+     * @param category The category being toggled off.
+     *
+     * @return The updated snapshot.
+     */
+    public SelectionSnapshot without(RestaurantCategory category) {
+        if (!myActiveSelections.containsKey(category)) {
+            return this;
+        }
+        LinkedHashMap<RestaurantCategory, List<Restaurant>> selections =
+                new LinkedHashMap<>(myActiveSelections);
+        selections.remove(category);
+        return new SelectionSnapshot(selections);
+    }
+
+    /**
+     * <p>Returns the zoom-indexed simplifications of the path through
+     * <code>category</code>, keeping every restaurant where it intersects
+     * another active category.</p>
+     *
+     * @param category An active category.
+     *
+     * @return The path pyramid of <code>category</code>.
+     */
+    public PathPyramid getPath(RestaurantCategory category) {
+        PathPyramid result = myPaths.get(category);
+
+        if (result == null) {
+            List<Restaurant> ordering = myActiveSelections.get(category);
+            if (ordering == null) {
+                ordering = Collections.emptyList();
+            }
+            Set<Restaurant> locked = new HashSet<>();
+            for (Restaurant r : ordering) {
+                if (getIntersections(r).size() > 1) {
+                    locked.add(r);
+                }
+            }
+            result = new PathPyramid(ordering, locked);
+            PathPyramid existing = myPaths.putIfAbsent(category, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * <p>Builds the path pyramid of every active category, so that the
+     * renderer never has to.</p>
+     *
+     * @return This snapshot.
+     */
+    public SelectionSnapshot precomputePaths() {
+        for (RestaurantCategory category : myActiveSelections.keySet()) {
+            getPath(category);
+        }
+        return this;
+    }
+
+    public Map<RestaurantCategory, List<Restaurant>> getActiveSelections() {
+        return myActiveSelections;
+    }
+
+    public boolean isActive(RestaurantCategory category) {
+        return myActiveSelections.containsKey(category);
+    }
+
+    /**
+     * <p>Returns the active categories <code>r</code> belongs to, in the
+     * order they were toggled on.</p>
+     *
+     * @param r A restaurant.
+     *
+     * @return The (possibly empty) set of active categories containing
+     *      <code>r</code>.
+     */
+    public Set<RestaurantCategory> getIntersections(Restaurant r) {
+        Set<RestaurantCategory> result = myIntersections.get(r);
+        if (result == null) {
+            result = Collections.emptySet();
+        }
+        return result;
+    }
+}
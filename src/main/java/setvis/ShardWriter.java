@@ -0,0 +1,128 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * <p>Partitions a raw dataset into one file per web mercator tile at a
+ * fixed zoom level, plus an index describing them, so that
+ * {@link ShardedDataset} can load a region piecemeal.</p>
+ *
+ * <p>The index (<tt>index.json</tt>) looks like:</p>
+ *
+ * <pre>
+ *   { "zoom": 14, "latitude": 47.6, "longitude": -122.3,
+ *     "shards": [ { "x": 2624, "y": 5721, "file": "14-2624-5721.json",
+ *                   "count": 12 }, ... ] }
+ * </pre>
+ *
+ * <p>where <code>latitude</code>/<code>longitude</code> give the centroid
+ * of the region. Shard files use the same format as the original
+ * dataset.</p>
+ */
+public class ShardWriter {
+
+    public static final String INDEX_FILE = "index.json";
+
+    public static final int DEFAULT_ZOOM = 14;
+
+    /**
+     * <p>Writes the shards of <code>rawData</code> and their index into
+     * <code>directory</code>, creating it if necessary.</p>
+     *
+     * @param rawData The raw <tt>JSON</tt> objects of the dataset.
+     * @param directory Where to put the shards.
+     * @param zoom The zoom level whose tiles become shards.
+     *
+     * @throws IOException If a shard or the index cannot be written.
+     *
+     * @return The index file.
+     */
+    public static File write(JSONArray rawData, File directory, int zoom)
+            throws IOException {
+        Files.createDirectories(directory.toPath());
+        Map<String, JSONArray> shards = new TreeMap<>();
+        Map<String, int[]> addresses = new TreeMap<>();
+        double sumLat = 0, sumLon = 0;
+        double tiles = 1L << zoom;
+
+        for (int i = 0; i < rawData.size(); i++) {
+            JSONObject o = rawData.getJSONObject(i);
+            JSONObject coord = o.getJSONObject("location")
+                    .getJSONObject("coordinate");
+            double lat = coord.getDouble("latitude");
+            double lon = coord.getDouble("longitude");
+            sumLat += lat;
+            sumLon += lon;
+
+            int x = (int) Math.min(tiles - 1,
+                    MercatorProjection.worldX(lon) * tiles);
+            int y = (int) Math.min(tiles - 1,
+                    MercatorProjection.worldY(lat) * tiles);
+            String name = zoom + "-" + x + "-" + y + ".json";
+
+            if (!shards.containsKey(name)) {
+                shards.put(name, new JSONArray());
+                addresses.put(name, new int[] { x, y });
+            }
+            shards.get(name).append(o);
+        }
+
+        JSONArray entries = new JSONArray();
+        for (Map.Entry<String, JSONArray> e : shards.entrySet()) {
+            writeJSON(new File(directory, e.getKey()),
+                    e.getValue().format(-1));
+
+            int[] address = addresses.get(e.getKey());
+            JSONObject entry = new JSONObject();
+            entry.setInt("x", address[0]);
+            entry.setInt("y", address[1]);
+            entry.setString("file", e.getKey());
+            entry.setInt("count", e.getValue().size());
+            entries.append(entry);
+        }
+
+        JSONObject index = new JSONObject();
+        int count = Math.max(1, rawData.size());
+        index.setInt("zoom", zoom);
+        index.setDouble("latitude", sumLat / count);
+        index.setDouble("longitude", sumLon / count);
+        index.setJSONArray("shards", entries);
+
+        File result = new File(directory, INDEX_FILE);
+        writeJSON(result, index.format(2));
+        return result;
+    }
+
+    private static void writeJSON(File file, String json) throws IOException {
+        try (Writer out = Files.newBufferedWriter(file.toPath(),
+                StandardCharsets.UTF_8)) {
+            out.write(json);
+        }
+    }
+}
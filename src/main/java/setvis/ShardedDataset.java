@@ -0,0 +1,328 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import de.fhpotsdam.unfolding.geo.Location;
+import processing.core.PApplet;
+import processing.data.JSONArray;
+import processing.data.JSONObject;
+import setvis.metrics.Meter;
+import setvis.metrics.Metrics;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>A region-sized dataset split into shards by {@link ShardWriter}, of
+ * which only the shards under the current viewport (plus a prefetch ring
+ * around it) are kept loaded.</p>
+ *
+ * <p>The animation thread reports the viewport through
+ * {@link #viewportChanged(Location, Location)}, which returns at once.
+ * Shards are then read on a background thread, and shards that have gone
+ * off-screen are evicted (least recently used first) once more restaurants
+ * are loaded than the memory budget allows. Each round of loading and
+ * eviction is reported to the {@link DatasetDelta}-consuming listener, so
+ * it can be applied like any other dataset change.</p>
+ */
+public class ShardedDataset {
+
+    //a hit is a wanted shard that was still loaded
+    private static final Meter HITS = Metrics.meter("shards.cache.hits");
+    private static final Meter MISSES = Metrics.meter("shards.cache.misses");
+    private static final Meter EVICTIONS =
+            Metrics.meter("shards.cache.evictions");
+
+    private static final class Shard {
+
+        final int x, y;
+        final File file;
+
+        Shard(int x, int y, File file) {
+            this.x = x;
+            this.y = y;
+            this.file = file;
+        }
+    }
+
+    /**
+     * <p>An inclusive range of shard addresses.</p>
+     */
+    private static final class Range {
+
+        final int minX, minY, maxX, maxY;
+
+        Range(int minX, int minY, int maxX, int maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        boolean contains(int x, int y) {
+            return x >= minX && x <= maxX && y >= minY && y <= maxY;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((minX * 31 + minY) * 31 + maxX) * 31 + maxY;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            boolean result = (o instanceof Range);
+
+            if (result) {
+                Range r = (Range) o;
+                result = r.minX == minX && r.minY == minY && r.maxX == maxX
+                        && r.maxY == maxY;
+            }
+            return result;
+        }
+    }
+
+    public interface Listener {
+
+        public void shardsChanged(DatasetDelta delta);
+    }
+
+    private final int myZoom;
+    private final Location myCenter;
+    private final Map<Long, Shard> myShards = new HashMap<>();
+
+    private final RestaurantParser myParser;
+    private final Listener myListener;
+    private final int myBudget, myPrefetchRing;
+
+    /**
+     * <p>Loaded shards, least recently wanted first. Only touched on
+     * {@link #myLoader}.</p>
+     */
+    private final LinkedHashMap<Long, List<Restaurant>> myLoaded =
+            new LinkedHashMap<>(16, 0.75f, true);
+    private int myLoadedCount;
+
+    //the viewport and prefetch ring last loaded, only touched on myLoader
+    private Range myLoadedRing;
+
+    private final ExecutorService myLoader = Executors
+            .newSingleThreadExecutor(Threads.daemonFactory("shard-loader"));
+
+    private final AtomicReference<Range> myWanted = new AtomicReference<>();
+    private final AtomicBoolean myUpdateQueued = new AtomicBoolean();
+    private Range myLastViewport;
+
+    /**
+     * <p>Reads the shard index written by {@link ShardWriter}. No shard is
+     * loaded until the first viewport is reported.</p>
+     *
+     * @param index The index file.
+     * @param parser Parses shard files.
+     * @param budget The most restaurants to keep loaded once off-screen
+     *      shards can be evicted.
+     * @param prefetchRing The number of shards to load beyond each edge of
+     *      the viewport.
+     * @param listener Told about every batch of loaded and evicted
+     *      restaurants, on the loader thread.
+     */
+    public ShardedDataset(File index, RestaurantParser parser, int budget,
+            int prefetchRing, Listener listener) {
+        JSONObject raw = PApplet.loadJSONObject(index);
+        if (raw == null) {
+            throw new IllegalStateException("Unable to read shard index: "
+                    + index + ".");
+        }
+        myZoom = raw.getInt("zoom");
+        myCenter = new Location(raw.getDouble("latitude"),
+                raw.getDouble("longitude"));
+
+        JSONArray shards = raw.getJSONArray("shards");
+        File directory = index.getAbsoluteFile().getParentFile();
+        for (int i = 0; i < shards.size(); i++) {
+            JSONObject s = shards.getJSONObject(i);
+            Shard shard = new Shard(s.getInt("x"), s.getInt("y"),
+                    new File(directory, s.getString("file")));
+            myShards.put(key(shard.x, shard.y), shard);
+        }
+        myParser = parser;
+        myBudget = budget;
+        myPrefetchRing = prefetchRing;
+        myListener = listener;
+    }
+
+    /**
+     * <p>Returns the centroid of the whole region (a sensible place to
+     * start the map).</p>
+     *
+     * @return The center of the region.
+     */
+    public Location getCenter() {
+        return myCenter;
+    }
+
+    /**
+     * <p>Reports the corners of the visible map. Cheap enough to call every
+     * frame: nothing happens unless the set of shards under the viewport
+     * changed, and loading itself happens in the background.</p>
+     *
+     * @param topLeft The top left corner of the viewport.
+     * @param bottomRight The bottom right corner of the viewport.
+     */
+    public void viewportChanged(Location topLeft, Location bottomRight) {
+        double tiles = 1L << myZoom;
+        int minX = clamp(MercatorProjection.worldX(topLeft.getLon()) * tiles);
+        int minY = clamp(MercatorProjection.worldY(topLeft.getLat()) * tiles);
+        int maxX = clamp(MercatorProjection.worldX(bottomRight.getLon())
+                * tiles);
+        int maxY = clamp(MercatorProjection.worldY(bottomRight.getLat())
+                * tiles);
+
+        Range viewport = new Range(minX, minY, maxX, maxY);
+        if (viewport.equals(myLastViewport)) { return; }
+        myLastViewport = viewport;
+
+        myWanted.set(viewport);
+        if (myUpdateQueued.compareAndSet(false, true)) {
+            myLoader.execute(new Runnable() {
+                @Override public void run() {
+                    //coalesce viewports reported while we were busy
+                    myUpdateQueued.set(false);
+                    update(myWanted.get());
+                }
+            });
+        }
+    }
+
+    public void close() {
+        myLoader.shutdownNow();
+    }
+
+    private void update(Range viewport) {
+        Range ring = new Range(viewport.minX - myPrefetchRing,
+                viewport.minY - myPrefetchRing,
+                viewport.maxX + myPrefetchRing,
+                viewport.maxY + myPrefetchRing);
+        final double centerX = (viewport.minX + viewport.maxX) / 2.0;
+        final double centerY = (viewport.minY + viewport.maxY) / 2.0;
+
+        //shards that stay in the ring are loaded already; those leaving it
+        //were last wanted now, which is what eviction goes by
+        List<Shard> wanted = shardsIn(ring, myLoadedRing);
+        if (myLoadedRing != null) {
+            for (Shard s : shardsIn(myLoadedRing, ring)) {
+                myLoaded.get(key(s.x, s.y));
+            }
+        }
+        myLoadedRing = ring;
+
+        //visible shards first, then outwards through the prefetch ring
+        Collections.sort(wanted, new Comparator<Shard>() {
+            @Override public int compare(Shard a, Shard b) {
+                return Double.compare(
+                        Math.hypot(a.x - centerX, a.y - centerY),
+                        Math.hypot(b.x - centerX, b.y - centerY));
+            }
+        });
+
+        List<Restaurant> inserted = new ArrayList<>();
+        for (Shard s : wanted) {
+            Long key = key(s.x, s.y);
+            if (myLoaded.get(key) != null) {    //marks it as used
+                HITS.mark();
+                continue;
+            }
+            MISSES.mark();
+
+            try {
+                List<Restaurant> restaurants = myParser.parse(s.file);
+                myLoaded.put(key, restaurants);
+                myLoadedCount += restaurants.size();
+                inserted.addAll(restaurants);
+            }
+            catch (RuntimeException e) {
+                System.err.println("Skipping unreadable shard " + s.file
+                        + ": " + e.getMessage());
+            }
+        }
+
+        List<Restaurant> removed = new ArrayList<>();
+        Iterator<Map.Entry<Long, List<Restaurant>>> lru =
+                myLoaded.entrySet().iterator();
+        while (myLoadedCount > myBudget && lru.hasNext()) {
+            Map.Entry<Long, List<Restaurant>> e = lru.next();
+            Shard s = myShards.get(e.getKey());
+
+            if (!ring.contains(s.x, s.y)) {
+                removed.addAll(e.getValue());
+                myLoadedCount -= e.getValue().size();
+                lru.remove();
+                EVICTIONS.mark();
+            }
+        }
+
+        if (!inserted.isEmpty() || !removed.isEmpty()) {
+            myListener.shardsChanged(new DatasetDelta(inserted, removed,
+                    Collections.<DatasetDelta.Update>emptyList()));
+        }
+    }
+
+    /**
+     * <p>Returns the shards inside <code>range</code> but outside
+     * <code>except</code> (if not <code>null</code>), visiting whichever is
+     * fewer: the addresses in <code>range</code>, or the region's
+     * shards.</p>
+     */
+    private List<Shard> shardsIn(Range range, Range except) {
+        List<Shard> result = new ArrayList<>();
+        long area = (long) (range.maxX - range.minX + 1)
+                * (range.maxY - range.minY + 1);
+
+        if (area <= myShards.size()) {
+            for (int x = range.minX; x <= range.maxX; x++) {
+                for (int y = range.minY; y <= range.maxY; y++) {
+                    Shard s = myShards.get(key(x, y));
+                    if (s != null && (except == null
+                            || !except.contains(x, y))) {
+                        result.add(s);
+                    }
+                }
+            }
+        }
+        else {
+            for (Shard s : myShards.values()) {
+                if (range.contains(s.x, s.y) && (except == null
+                        || !except.contains(s.x, s.y))) {
+                    result.add(s);
+                }
+            }
+        }
+        return result;
+    }
+
+    private int clamp(double tile) {
+        return (int) Math.max(0, Math.min((1L << myZoom) - 1, tile));
+    }
+
+    private static Long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+/**
+ * <p>Tracks how far the background startup work has come, as a named stage
+ * and a count of steps completed within it. Updated by the loading thread
+ * and read by the draw loop.</p>
+ */
+public final class StartupProgress {
+
+    private String myStage = "Starting";
+    private int myDone, myTotal;
+    private boolean myFinished, myFailed;
+
+    /**
+     * <p>Moves on to <code>stage</code>, made up of <code>total</code>
+     * steps (or an unknown number, if <code>0</code>).</p>
+     *
+     * @param stage A short description of the work, e.g.
+     *      <tt>Ordering categories</tt>.
+     * @param total The number of steps in <code>stage</code>.
+     */
+    public synchronized void begin(String stage, int total) {
+        myStage = stage;
+        myDone = 0;
+        myTotal = total;
+    }
+
+    public synchronized void advance(int steps) {
+        myDone = Math.min(myTotal, myDone + steps);
+    }
+
+    public synchronized void finish() {
+        myDone = myTotal;
+        myFinished = true;
+    }
+
+    /**
+     * <p>Gives up on startup, leaving <code>reason</code> as the stage
+     * shown to the user.</p>
+     *
+     * @param reason What went wrong.
+     */
+    public synchronized void fail(String reason) {
+        myStage = reason;
+        myFailed = true;
+    }
+
+    public synchronized boolean isFinished() {
+        return myFinished;
+    }
+
+    public synchronized boolean isFailed() {
+        return myFailed;
+    }
+
+    public synchronized String getStage() {
+        return myStage;
+    }
+
+    /**
+     * <p>Returns the fraction of the current stage completed, or
+     * <code>-1</code> if its length is unknown.</p>
+     *
+     * @return A number in <code>[0, 1]</code>, or <code>-1</code>.
+     */
+    public synchronized float getFraction() {
+        return myTotal == 0 ? -1 : (float) myDone / myTotal;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Small helpers for the background threads used alongside the animation
+ * thread.</p>
+ */
+public class Threads {
+
+    /**
+     * <p>Returns a {@link ThreadFactory} producing named daemon threads, so
+     * that background work never keeps the sketch alive after its window
+     * closes.</p>
+     *
+     * @param name A prefix for the names of the created threads.
+     *
+     * @return A daemon thread factory.
+     */
+    public static ThreadFactory daemonFactory(final String name) {
+        return new ThreadFactory() {
+            private final AtomicInteger myCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread result = new Thread(r, name + "-"
+                        + myCount.incrementAndGet());
+                result.setDaemon(true);
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import setvis.DatasetDelta.Update;
+import setvis.Restaurant.RestaurantBuilder;
+import setvis.Restaurant.RestaurantRating;
+import setvis.Restaurant.RestaurantReviewCount;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * <p>Replays the review histories of a set of restaurants, so that the
+ * LineSets can be scrubbed back and forth through time.</p>
+ *
+ * <p>A restaurant appears with its oldest known review. From then on its
+ * review count is its total number of reviews less those known to come
+ * later (reviews the dataset does not carry are taken to be older). Its
+ * rating follows the running mean of its reviews if the dataset carries
+ * all of them, and is its final rating otherwise. After its newest review
+ * it is exactly the restaurant as loaded.</p>
+ *
+ * <p>Each restaurant's timeline is kept as the start times and categories
+ * of its distinct states, in flat primitive arrays, and every state change
+ * is also indexed by time. Moving between two times therefore only visits
+ * the restaurants that changed in between, and yields them as a
+ * {@link DatasetDelta} that can be applied to a store incrementally.</p>
+ *
+ * <p>An index is not thread-safe; it is meant to be driven from a single
+ * thread.</p>
+ */
+public final class TimeIndex {
+
+    private static final RestaurantRating[] RATINGS =
+            RestaurantRating.values();
+    private static final RestaurantReviewCount[] COUNTS =
+            RestaurantReviewCount.values();
+
+    //a state before a restaurant's first review
+    private static final byte ABSENT = -1;
+
+    private final Restaurant[] myRestaurants;
+
+    //the states of restaurant i are myFirstState[i] to myFirstState[i + 1]
+    private final int[] myFirstState;
+    private final long[] myStateTimes;
+    private final byte[] myStateRatings, myStateCounts;
+    private final Restaurant[] myVersions;
+
+    //every state change (bar the first of each restaurant), by time
+    private final long[] myEventTimes;
+    private final int[] myEventRestaurants;
+
+    private final int[] myVisited;
+    private int myVisit;
+
+    private TimeIndex(Restaurant[] restaurants, int[] firstState,
+            long[] stateTimes, byte[] stateRatings, byte[] stateCounts,
+            long[] eventTimes, int[] eventRestaurants) {
+        myRestaurants = restaurants;
+        myFirstState = firstState;
+        myStateTimes = stateTimes;
+        myStateRatings = stateRatings;
+        myStateCounts = stateCounts;
+        myVersions = new Restaurant[stateTimes.length];
+        myEventTimes = eventTimes;
+        myEventRestaurants = eventRestaurants;
+        myVisited = new int[restaurants.length];
+
+        for (int i = 0; i < restaurants.length; i++) {
+            myVersions[myFirstState[i + 1] - 1] = restaurants[i];
+        }
+    }
+
+    /**
+     * <p>Indexes the review histories of <code>restaurants</code>.</p>
+     *
+     * @param restaurants The restaurants, as loaded.
+     *
+     * @throws IllegalArgumentException If the reviews span more than about
+     *      68 years.
+     *
+     * @return The index.
+     */
+    public static TimeIndex build(Collection<Restaurant> restaurants) {
+        Restaurant[] all = restaurants.toArray(
+                new Restaurant[restaurants.size()]);
+        int n = all.length;
+        int capacity = n;
+        for (Restaurant r : all) {
+            capacity += r.getReviewTimes().length;
+        }
+        int[] firstState = new int[n + 1];
+        long[] stateTimes = new long[capacity];
+        byte[] stateRatings = new byte[capacity];
+        byte[] stateCounts = new byte[capacity];
+        long[] events = new long[capacity];
+        int states = 0, eventCount = 0;
+
+        RestaurantParser parser = new RestaurantParser();
+        long epoch = Long.MAX_VALUE;
+        for (Restaurant r : all) {
+            long[] times = r.getReviewTimes();
+            if (times.length > 0) {
+                epoch = Math.min(epoch, times[0]);
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            Restaurant r = all[i];
+            long[] times = r.getReviewTimes();
+            float[] ratings = r.getReviewRatings();
+            int k = times.length;
+            firstState[i] = states;
+
+            stateTimes[states] = Long.MIN_VALUE;
+            stateRatings[states] = k == 0
+                    ? (byte) r.getRating().ordinal() : ABSENT;
+            stateCounts[states] = k == 0
+                    ? (byte) r.getReviewCount().ordinal() : ABSENT;
+            states++;
+
+            float sum = 0;
+            for (int j = 0; j < k; j++) {
+                sum += ratings[j];
+                RestaurantRating rating = r.getRating();
+                RestaurantReviewCount count = r.getReviewCount();
+                if (j < k - 1) {
+                    int reviews = Math.max(r.getReviews(), k) - (k - 1 - j);
+                    count = parser.getReviewCt(reviews);
+                    if (k >= r.getReviews()) {
+                        rating = meanRating(parser, sum / (j + 1));
+                    }
+                }
+                int last = states - 1;
+                if (stateRatings[last] == rating.ordinal()
+                        && stateCounts[last] == count.ordinal()) {
+                    continue;
+                }
+                if (stateTimes[last] == times[j]) {
+                    //several reviews at once: only the last state counts
+                    states--;
+                    eventCount--;
+                }
+                if (times[j] - epoch > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Reviews span too"
+                            + " long a time: " + r + ".");
+                }
+                stateTimes[states] = times[j];
+                stateRatings[states] = (byte) rating.ordinal();
+                stateCounts[states] = (byte) count.ordinal();
+                states++;
+                events[eventCount++] = (times[j] - epoch) << 32 | i;
+            }
+        }
+        firstState[n] = states;
+
+        //events sort by time, then by restaurant
+        Arrays.sort(events, 0, eventCount);
+        long[] eventTimes = new long[eventCount];
+        int[] eventRestaurants = new int[eventCount];
+        for (int e = 0; e < eventCount; e++) {
+            eventTimes[e] = (events[e] >>> 32) + epoch;
+            eventRestaurants[e] = (int) events[e];
+        }
+        return new TimeIndex(all, firstState,
+                Arrays.copyOf(stateTimes, states),
+                Arrays.copyOf(stateRatings, states),
+                Arrays.copyOf(stateCounts, states), eventTimes,
+                eventRestaurants);
+    }
+
+    /**
+     * <p>Returns the time of the first change, in seconds since the epoch
+     * (<code>0</code> if nothing ever changes).</p>
+     *
+     * @return The start of the timeline.
+     */
+    public long getStart() {
+        return myEventTimes.length == 0 ? 0 : myEventTimes[0];
+    }
+
+    /**
+     * <p>Returns the time of the last change, from which on every
+     * restaurant is as loaded.</p>
+     *
+     * @return The end of the timeline.
+     */
+    public long getEnd() {
+        return myEventTimes.length == 0 ? 0
+                : myEventTimes[myEventTimes.length - 1];
+    }
+
+    /**
+     * <p>Returns what changes between time <code>from</code> and time
+     * <code>to</code> (either may come first): restaurants that appear are
+     * inserted, those that disappear are removed, and those that change
+     * categories are updated. Only restaurants with a change in between
+     * are looked at.</p>
+     *
+     * @param from The time the restaurants are at, in seconds.
+     * @param to The time to move them to, in seconds.
+     *
+     * @return The changes.
+     */
+    public DatasetDelta between(long from, long to) {
+        List<Restaurant> inserted = new ArrayList<>();
+        List<Restaurant> removed = new ArrayList<>();
+        List<Update> updated = new ArrayList<>();
+
+        int end = after(Math.max(from, to));
+        myVisit++;
+        for (int e = after(Math.min(from, to)); e < end; e++) {
+            int i = myEventRestaurants[e];
+            if (myVisited[i] == myVisit) { continue; }
+            myVisited[i] = myVisit;
+
+            Restaurant before = version(i, stateAt(i, from));
+            Restaurant after = version(i, stateAt(i, to));
+            if (before == after) { continue; }
+
+            if (before == null) {
+                inserted.add(after);
+            }
+            else if (after == null) {
+                removed.add(before);
+            }
+            else if (!before.isPlacedLike(after)) {
+                updated.add(new Update(before, after));
+            }
+        }
+        return new DatasetDelta(inserted, removed, updated);
+    }
+
+    /**
+     * <p>Returns the index of the first event later than
+     * <code>time</code>.</p>
+     */
+    private int after(long time) {
+        int lo = 0, hi = myEventTimes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (myEventTimes[mid] <= time) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * <p>Returns the state restaurant <code>i</code> is in at
+     * <code>time</code>.</p>
+     */
+    private int stateAt(int i, long time) {
+        int lo = myFirstState[i], hi = myFirstState[i + 1] - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (myStateTimes[mid] <= time) {
+                lo = mid;
+            }
+            else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * <p>Returns restaurant <code>i</code> as it is in
+     * <code>state</code>, or <code>null</code> if it has not appeared
+     * yet.</p>
+     */
+    private Restaurant version(int i, int state) {
+        if (myStateRatings[state] == ABSENT) {
+            return null;
+        }
+        if (myVersions[state] == null) {
+            myVersions[state] = new RestaurantBuilder(myRestaurants[i])
+                    .rating(RATINGS[myStateRatings[state]])
+                    .reviewCount(COUNTS[myStateCounts[state]])
+                    .build();
+        }
+        return myVersions[state];
+    }
+
+    /**
+     * <p>Returns the rating closest to <code>stars</code>, rounded to the
+     * nearest half star and clamped to the ratings there are.</p>
+     */
+    private static RestaurantRating meanRating(RestaurantParser parser,
+            float stars) {
+        double rounded = Math.round(stars * 2) / 2.0;
+        return parser.getRating(Math.max(3.0, Math.min(4.5, rounded)));
+    }
+}
@@ -19,10 +19,16 @@ package setvis.gui;
 
 import controlP5.Button;
 import controlP5.ControlP5;
+import controlP5.Slider;
+import controlP5.Textfield;
 import processing.core.PApplet;
 import setvis.Restaurant.RestaurantReviewCount;
 import setvis.Restaurant.RestaurantType;
 import setvis.Restaurant.RestaurantRating;
+import setvis.RestaurantCategory;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * <p>A small collection of static helper methods to help hide some ugliness
@@ -32,6 +38,76 @@ import setvis.Restaurant.RestaurantRating;
  */
 public class Gui {
 
+    private static final int CAPTION_COLOR = 0xFFFFFFFF;
+    private static final int LOCKED_CAPTION_COLOR = 0xFF8C8C8C;
+
+    /**
+     * <p>The name of the time slider, and so of the method of the sketch it
+     * invokes.</p>
+     */
+    public static final String TIMELINE = "timeline";
+
+    /**
+     * <p>The name of the search field, and so of the method of the sketch
+     * it invokes when <tt>enter</tt> is pressed.</p>
+     */
+    public static final String SEARCH = "search";
+
+    private static final Map<RestaurantCategory, String> BUTTON_NAMES =
+            new HashMap<>();
+
+    static {
+        BUTTON_NAMES.put(RestaurantType.AMERICAN, "american");
+        BUTTON_NAMES.put(RestaurantType.ITALIAN, "italian");
+        BUTTON_NAMES.put(RestaurantType.ASIAN, "asian");
+        BUTTON_NAMES.put(RestaurantType.MEXICAN, "mexican");
+        BUTTON_NAMES.put(RestaurantRating.THREE, "three");
+        BUTTON_NAMES.put(RestaurantRating.THREE_POINT_FIVE, "threePointFive");
+        BUTTON_NAMES.put(RestaurantRating.FOUR, "four");
+        BUTTON_NAMES.put(RestaurantRating.FOUR_POINT_FIVE, "fourPointFive");
+        BUTTON_NAMES.put(RestaurantReviewCount.SMALL_COUNT,
+                "smallReviewCount");
+        BUTTON_NAMES.put(RestaurantReviewCount.MEDIUM_COUNT,
+                "mediumReviewCount");
+        BUTTON_NAMES.put(RestaurantReviewCount.LARGE_COUNT,
+                "largeReviewCount");
+    }
+
+    /**
+     * <p>Locks (greying out its caption) or unlocks the button toggling
+     * <code>category</code>. A locked button ignores clicks, e.g. while its
+     * category's ordering is still being computed.</p>
+     *
+     * @param cp5 The controls holding the category buttons.
+     * @param category A category.
+     * @param locked Whether the button should ignore clicks.
+     */
+    public static void setCategoryButtonLocked(ControlP5 cp5,
+            RestaurantCategory category, boolean locked) {
+        Button button = cp5.get(Button.class, BUTTON_NAMES.get(category));
+        button.setLock(locked).setColorCaptionLabel(locked
+                ? LOCKED_CAPTION_COLOR : CAPTION_COLOR);
+    }
+
+    /**
+     * <p>Switches the button toggling <code>category</code> on or off, just
+     * as a click would (invoking its callback).</p>
+     *
+     * @param cp5 The controls holding the category buttons.
+     * @param category A category.
+     * @param on Whether the button should end up on.
+     */
+    public static void setCategoryButtonOn(ControlP5 cp5,
+            RestaurantCategory category, boolean on) {
+        Button button = cp5.get(Button.class, BUTTON_NAMES.get(category));
+        if (on) {
+            button.setOn();
+        }
+        else {
+            button.setOff();
+        }
+    }
+
     public static void createRestaurantTypeButtons(ControlP5 cp5, float plotX1,
             float plotY1) {
         Button american = cp5.addButton("american");
@@ -113,4 +189,97 @@ public class Gui {
                 .setColorActive(RestaurantReviewCount.LARGE_COUNT.getAssignedColor())
                 .setSwitch(true).setCaptionLabel("301 .. 800");
     }
+
+    /**
+     * <p>Creates the field restaurants are searched for by name in. It
+     * keeps its text on <tt>enter</tt>, so the matches stay highlighted.</p>
+     *
+     * @param cp5 The controls to add the field to.
+     * @param x The left edge of the field.
+     * @param y The top edge of the field.
+     * @param width The width of the field.
+     */
+    public static void createSearchField(ControlP5 cp5, float x, float y,
+            int width) {
+        Textfield search = cp5.addTextfield(SEARCH);
+        search.setPosition(x, y).setSize(width, 20)
+                .setColorBackground(0xFF414141).setColorForeground(0xFF5A5A5A)
+                .setColorActive(0xFFF2003C).setAutoClear(false)
+                .setCaptionLabel("");
+    }
+
+    public static String getSearchText(ControlP5 cp5) {
+        return cp5.get(Textfield.class, SEARCH).getText();
+    }
+
+    public static void setSearchText(ControlP5 cp5, String text) {
+        cp5.get(Textfield.class, SEARCH).setText(text);
+    }
+
+    public static boolean isSearchFocused(ControlP5 cp5) {
+        return cp5.get(Textfield.class, SEARCH).isFocus();
+    }
+
+    /**
+     * <p>Creates the slider scrubbing through time, hidden until
+     * {@link #showTimelineSlider} gives it a range.</p>
+     *
+     * @param cp5 The controls to add the slider to.
+     * @param x The left edge of the slider.
+     * @param y The top edge of the slider.
+     * @param width The width of the slider.
+     */
+    public static void createTimelineSlider(ControlP5 cp5, float x, float y,
+            int width) {
+        Slider timeline = cp5.addSlider(TIMELINE);
+        timeline.setPosition(x, y).setSize(width, 14)
+                .setColorBackground(0xFF414141).setColorForeground(0xFF5A5A5A)
+                .setColorActive(0xFFF2003C).setCaptionLabel("")
+                .setVisible(false);
+    }
+
+    /**
+     * <p>Shows the time slider, spanning <code>start</code> to
+     * <code>end</code> and set to <code>end</code>, without invoking its
+     * callback.</p>
+     *
+     * @param cp5 The controls holding the slider.
+     * @param start The earliest time.
+     * @param end The latest time.
+     * @param label The text to show for <code>end</code>.
+     */
+    public static void showTimelineSlider(ControlP5 cp5, float start,
+            float end, String label) {
+        Slider timeline = cp5.get(Slider.class, TIMELINE);
+        timeline.setBroadcast(false);
+        timeline.setRange(start, end).setValue(end);
+        timeline.setBroadcast(true);
+        timeline.setVisible(true);
+        setTimelineLabel(cp5, label);
+    }
+
+    /**
+     * <p>Moves the time slider to <code>value</code> without invoking its
+     * callback.</p>
+     *
+     * @param cp5 The controls holding the slider.
+     * @param value The slider's new value.
+     */
+    public static void setTimelineValue(ControlP5 cp5, float value) {
+        Slider timeline = cp5.get(Slider.class, TIMELINE);
+        timeline.setBroadcast(false);
+        timeline.setValue(value);
+        timeline.setBroadcast(true);
+    }
+
+    /**
+     * <p>Replaces the number shown on the time slider with
+     * <code>label</code>.</p>
+     *
+     * @param cp5 The controls holding the slider.
+     * @param label The text to show.
+     */
+    public static void setTimelineLabel(ControlP5 cp5, String label) {
+        cp5.get(Slider.class, TIMELINE).getValueLabel().setText(label);
+    }
 }
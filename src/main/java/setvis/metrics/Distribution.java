@@ -0,0 +1,75 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Summarizes a stream of measurements (durations, lengths) by their
+ * count, total, mean and maximum. Recording never blocks: the count and
+ * total are {@link StripedCounter}s, and the maximum is only written when
+ * it grows.</p>
+ */
+public final class Distribution implements Metric {
+
+    private final StripedCounter myCount = new StripedCounter();
+    private final StripedCounter myTotal = new StripedCounter();
+    private final AtomicLong myMax = new AtomicLong(Long.MIN_VALUE);
+
+    public void record(long value) {
+        myCount.increment();
+        myTotal.add(value);
+
+        long max = myMax.get();
+        while (value > max && !myMax.compareAndSet(max, value)) {
+            max = myMax.get();
+        }
+    }
+
+    public long getCount() {
+        return myCount.sum();
+    }
+
+    public long getTotal() {
+        return myTotal.sum();
+    }
+
+    /**
+     * <p>Returns the largest value recorded, or <code>0</code> if there
+     * were none.</p>
+     *
+     * @return The maximum.
+     */
+    public long getMax() {
+        long result = myMax.get();
+        return result == Long.MIN_VALUE ? 0 : result;
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getTotal() / count;
+    }
+
+    @Override public void report(String name, Map<String, Number> into) {
+        long count = getCount();
+        into.put(name + ".count", count);
+        into.put(name + ".mean", count == 0 ? 0 : (double) getTotal() / count);
+        into.put(name + ".max", getMax());
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.metrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A {@link StripedCounter} that also reports how fast it has grown: the
+ * mean rate per second since it was created.</p>
+ */
+public final class Meter implements Metric {
+
+    private final StripedCounter myCount = new StripedCounter();
+    private final long myStart = System.nanoTime();
+
+    public void mark() {
+        myCount.increment();
+    }
+
+    public void mark(long amount) {
+        myCount.add(amount);
+    }
+
+    public long getCount() {
+        return myCount.sum();
+    }
+
+    public double getMeanRate() {
+        double seconds = (double) (System.nanoTime() - myStart)
+                / TimeUnit.SECONDS.toNanos(1);
+        return seconds <= 0 ? 0 : getCount() / seconds;
+    }
+
+    @Override public void report(String name, Map<String, Number> into) {
+        into.put(name + ".count", getCount());
+        into.put(name + ".rate", getMeanRate());
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.metrics;
+
+import java.util.Map;
+
+/**
+ * <p>Something registered with {@link Metrics}, reported as one or more
+ * named numbers.</p>
+ */
+public interface Metric {
+
+    /**
+     * <p>Adds the current value(s) of this metric to <code>into</code>,
+     * under <code>name</code> or names starting with it.</p>
+     *
+     * @param name The name this metric is registered under.
+     * @param into Receives the values.
+     */
+    public void report(String name, Map<String, Number> into);
+}
@@ -0,0 +1,201 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.metrics;
+
+import javax.management.*;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * <p>The process-wide registry of metrics, by dotted name (e.g.
+ * <tt>ingest.records</tt>). Metrics are created on first use, so the code
+ * being measured simply asks for its metric by name and keeps it.</p>
+ *
+ * <p>Everything registered is published as the attributes of a single
+ * MBean, {@link #OBJECT_NAME}, once {@link #registerMBean()} has been
+ * called, and can be written out as plain text for
+ * {@link MetricsServer}.</p>
+ */
+public final class Metrics {
+
+    public static final String OBJECT_NAME = "setvis:type=Metrics";
+
+    private static final ConcurrentMap<String, Metric> METRICS =
+            new ConcurrentSkipListMap<>();
+
+    private Metrics() {}
+
+    public static StripedCounter counter(String name) {
+        return get(name, StripedCounter.class);
+    }
+
+    public static Meter meter(String name) {
+        return get(name, Meter.class);
+    }
+
+    public static Distribution distribution(String name) {
+        return get(name, Distribution.class);
+    }
+
+    /**
+     * <p>Registers <code>gauge</code> under <code>name</code>, replacing
+     * any gauge already there.</p>
+     *
+     * @param name The gauge's name.
+     * @param gauge Reads the value.
+     *
+     * @throws IllegalArgumentException If <code>name</code> is taken by a
+     *      metric that is not a gauge.
+     */
+    public static void gauge(String name, Gauge gauge) {
+        Metric existing = METRICS.put(name, gauge);
+        if (existing != null && !(existing instanceof Gauge)) {
+            METRICS.put(name, existing);
+            throw new IllegalArgumentException("Not a gauge: " + name + ".");
+        }
+    }
+
+    /**
+     * <p>Returns the current value of every metric, sorted by name.</p>
+     *
+     * @return The values.
+     */
+    public static SortedMap<String, Number> snapshot() {
+        SortedMap<String, Number> result = new TreeMap<>();
+        for (Map.Entry<String, Metric> e : METRICS.entrySet()) {
+            e.getValue().report(e.getKey(), result);
+        }
+        return result;
+    }
+
+    /**
+     * <p>Writes {@link #snapshot()} to <code>out</code>, one
+     * <tt>name value</tt> pair per line.</p>
+     *
+     * @param out Receives the text.
+     *
+     * @throws IOException If <code>out</code> cannot be written to.
+     */
+    public static void writeText(Appendable out) throws IOException {
+        for (Map.Entry<String, Number> e : snapshot().entrySet()) {
+            out.append(e.getKey()).append(' ')
+                    .append(String.valueOf(e.getValue())).append('\n');
+        }
+    }
+
+    /**
+     * <p>Publishes the registry on the platform MBean server, if it is not
+     * there already. Metrics created later show up the next time a client
+     * reads the MBean's info.</p>
+     *
+     * @throws IllegalStateException If the MBean cannot be registered.
+     */
+    public static synchronized void registerMBean() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new Bean(), name);
+            }
+        }
+        catch (JMException e) {
+            throw new IllegalStateException("Unable to register "
+                    + OBJECT_NAME + ".", e);
+        }
+    }
+
+    private static <T extends Metric> T get(String name, Class<T> type) {
+        Metric result = METRICS.get(name);
+        if (result == null) {
+            try {
+                result = type.getDeclaredConstructor().newInstance();
+            }
+            catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unable to create "
+                        + type.getSimpleName() + ": " + name + ".", e);
+            }
+            Metric existing = METRICS.putIfAbsent(name, result);
+            if (existing != null) {
+                result = existing;
+            }
+        }
+        if (!type.isInstance(result)) {
+            throw new IllegalArgumentException("Not a "
+                    + type.getSimpleName() + ": " + name + ".");
+        }
+        return type.cast(result);
+    }
+
+    /**
+     * <p>Exposes every reported value as a read-only attribute.</p>
+     */
+    private static final class Bean implements DynamicMBean {
+
+        @Override public Object getAttribute(String attribute)
+                throws AttributeNotFoundException {
+            Number result = snapshot().get(attribute);
+            if (result == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return result;
+        }
+
+        @Override public AttributeList getAttributes(String[] attributes) {
+            SortedMap<String, Number> values = snapshot();
+            AttributeList result = new AttributeList();
+            for (String attribute : attributes) {
+                if (values.containsKey(attribute)) {
+                    result.add(new Attribute(attribute,
+                            values.get(attribute)));
+                }
+            }
+            return result;
+        }
+
+        @Override public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Number> e : snapshot().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(e.getKey(),
+                        e.getValue().getClass().getName(), e.getKey(), true,
+                        false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(),
+                    "LineSets runtime metrics.", attributes.toArray(
+                            new MBeanAttributeInfo[attributes.size()]),
+                    null, null, null);
+        }
+
+        @Override public void setAttribute(Attribute attribute)
+                throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only.");
+        }
+
+        @Override public AttributeList setAttributes(AttributeList list) {
+            return new AttributeList();
+        }
+
+        @Override public Object invoke(String action, Object[] parameters,
+                String[] signature) throws MBeanException {
+            throw new MBeanException(new UnsupportedOperationException(
+                    action));
+        }
+    }
+}
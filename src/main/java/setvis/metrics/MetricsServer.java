@@ -0,0 +1,93 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import setvis.Threads;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <p>Serves {@link Metrics#writeText} as plain text on
+ * <tt>http://127.0.0.1:&lt;port&gt;/metrics</tt>, for machines where no
+ * JMX client can be attached.</p>
+ */
+public class MetricsServer {
+
+    private final HttpServer myServer;
+    private final ExecutorService myWorker =
+            Executors.newSingleThreadExecutor(Threads.daemonFactory("metrics"));
+
+    /**
+     * <p>Creates a server bound to <code>port</code> on the loopback
+     * interface. Use port <code>0</code> to pick any free port.</p>
+     *
+     * @param port The port to listen on.
+     *
+     * @throws IOException If the port cannot be bound.
+     */
+    public MetricsServer(int port) throws IOException {
+        myServer = HttpServer.create(new InetSocketAddress(
+                "127.0.0.1", port), 0);
+        myServer.setExecutor(myWorker);
+        myServer.createContext("/metrics", new HttpHandler() {
+            @Override public void handle(HttpExchange exchange)
+                    throws IOException {
+                handleMetrics(exchange);
+            }
+        });
+    }
+
+    public void start() {
+        myServer.start();
+    }
+
+    public void stop() {
+        myServer.stop(0);
+        myWorker.shutdown();
+    }
+
+    public int getPort() {
+        return myServer.getAddress().getPort();
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            StringBuilder text = new StringBuilder();
+            Metrics.writeText(text);
+
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type",
+                    "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.metrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>A counter that many threads can bump at once without contending.
+ * Each thread adds to one of several cells, chosen by its id and padded
+ * onto separate cache lines; only reading the total visits them all.</p>
+ *
+ * <p>Updates never lock or spin on another thread, so they are safe to
+ * make from the animation thread.</p>
+ */
+public final class StripedCounter implements Metric {
+
+    //longs per cell, so that neighbouring cells sit on separate cache lines
+    private static final int PADDING = 8;
+
+    private static final int STRIPES = stripes(
+            Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray myCells =
+            new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long amount) {
+        myCells.getAndAdd(cell(), amount);
+    }
+
+    /**
+     * <p>Returns the total of every addition so far. Additions made while
+     * this runs may or may not be included.</p>
+     *
+     * @return The total.
+     */
+    public long sum() {
+        long result = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            result += myCells.get(i * PADDING);
+        }
+        return result;
+    }
+
+    @Override public void report(String name, Map<String, Number> into) {
+        into.put(name, sum());
+    }
+
+    private static int cell() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (STRIPES - 1)) * PADDING;
+    }
+
+    /**
+     * <p>Returns the smallest power of two at least twice
+     * <code>processors</code>, capped at 64.</p>
+     */
+    private static int stripes(int processors) {
+        int result = 1;
+        while (result < 2 * processors && result < 64) {
+            result <<= 1;
+        }
+        return result;
+    }
+}
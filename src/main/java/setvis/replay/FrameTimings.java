@@ -0,0 +1,109 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * <p>Collects how long each frame took to draw, and how long passed
+ * between the starts of consecutive frames, in nanoseconds.</p>
+ */
+public class FrameTimings {
+
+    private long[] myDraw = new long[1024];
+    private long[] myInterval = new long[1024];
+    private int myCount;
+
+    private long myFrameStart, myPreviousStart;
+
+    public void beginFrame() {
+        myPreviousStart = myFrameStart;
+        myFrameStart = System.nanoTime();
+    }
+
+    public void endFrame() {
+        if (myCount == myDraw.length) {
+            myDraw = Arrays.copyOf(myDraw, 2 * myCount);
+            myInterval = Arrays.copyOf(myInterval, 2 * myCount);
+        }
+        myDraw[myCount] = System.nanoTime() - myFrameStart;
+        myInterval[myCount] = myPreviousStart == 0
+                ? 0 : myFrameStart - myPreviousStart;
+        myCount++;
+    }
+
+    public int size() {
+        return myCount;
+    }
+
+    /**
+     * <p>Writes one line per frame, <tt>frame,draw_ms,interval_ms</tt>, to
+     * <code>file</code>.</p>
+     *
+     * @param file A CSV file.
+     *
+     * @throws IOException If <code>file</code> cannot be written.
+     */
+    public void write(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "UTF-8")) {
+            out.println("frame,draw_ms,interval_ms");
+            for (int i = 0; i < myCount; i++) {
+                out.println(i + "," + millis(myDraw[i]) + ","
+                        + millis(myInterval[i]));
+            }
+        }
+    }
+
+    /**
+     * <p>Prints the frame count and the mean, median, 95th and 99th
+     * percentile and worst draw times to <code>out</code>.</p>
+     *
+     * @param out Where to print the summary.
+     */
+    public void summarize(PrintStream out) {
+        if (myCount == 0) {
+            out.println("No frames drawn.");
+            return;
+        }
+        long[] sorted = Arrays.copyOf(myDraw, myCount);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long t : sorted) {
+            total += t;
+        }
+        out.println(myCount + " frames; draw ms: mean " + millis(total
+                / myCount) + ", p50 " + millis(percentile(sorted, 50))
+                + ", p95 " + millis(percentile(sorted, 95)) + ", p99 "
+                + millis(percentile(sorted, 99)) + ", max "
+                + millis(sorted[myCount - 1]));
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.replay;
+
+import processing.event.Event;
+import processing.event.KeyEvent;
+import processing.event.MouseEvent;
+import setvis.RestaurantCategories;
+import setvis.RestaurantCategory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>The file format of a recorded session: a short header followed by one
+ * entry per mouse event, key event, category toggle, change to the text
+ * searched for or move of the time slider, and a final entry marking the
+ * last frame of the session.</p>
+ *
+ * <p>Every entry starts with its kind and with the frames and milliseconds
+ * elapsed since the previous entry, as variable-length integers, so that a
+ * typical entry takes well under a dozen bytes.</p>
+ */
+public final class InteractionLog {
+
+    private static final int MAGIC = 0x4C53524C;   //"LSRL"
+    //older logs lack search and time entries, but read just the same
+    private static final int VERSION = 3;
+
+    public static enum Kind {
+        MOUSE, KEY, TOGGLE, END, SEARCH, TIMELINE
+    }
+
+    /**
+     * <p>A single recorded entry, timed by the frame it was dispatched on
+     * (and the wall clock, in milliseconds, for reference).</p>
+     */
+    public static final class Entry {
+
+        private final Kind myKind;
+        private final int myFrame;
+        private final long myMillis;
+        private final int myAction, myModifiers, myX, myY, myButton, myCount;
+        private final char myKey;
+        private final int myKeyCode;
+        private final RestaurantCategory myCategory;
+        private final boolean myOn;
+        private final String myText;
+        private final float myValue;
+
+        private Entry(Kind kind, int frame, long millis, int action,
+                int modifiers, int x, int y, int button, int count, char key,
+                int keyCode, RestaurantCategory category, boolean on,
+                String text, float value) {
+            myKind = kind;
+            myFrame = frame;
+            myMillis = millis;
+            myAction = action;
+            myModifiers = modifiers;
+            myX = x;
+            myY = y;
+            myButton = button;
+            myCount = count;
+            myKey = key;
+            myKeyCode = keyCode;
+            myCategory = category;
+            myOn = on;
+            myText = text;
+            myValue = value;
+        }
+
+        public Kind getKind() {
+            return myKind;
+        }
+
+        public int getFrame() {
+            return myFrame;
+        }
+
+        public long getMillis() {
+            return myMillis;
+        }
+
+        /**
+         * <p>Rebuilds the mouse or key event this entry records.</p>
+         *
+         * @param source The object to report as the event's native source.
+         *
+         * @throws IllegalStateException If this entry is not a mouse or key
+         *      event.
+         *
+         * @return The event.
+         */
+        public Event toEvent(Object source) {
+            switch (myKind) {
+                case MOUSE:
+                    return new MouseEvent(source, myMillis, myAction,
+                            myModifiers, myX, myY, myButton, myCount);
+                case KEY:
+                    return new KeyEvent(source, myMillis, myAction,
+                            myModifiers, myKey, myKeyCode);
+                default:
+                    throw new IllegalStateException("Not an input event: "
+                            + myKind + ".");
+            }
+        }
+
+        public RestaurantCategory getCategory() {
+            return myCategory;
+        }
+
+        public boolean isOn() {
+            return myOn;
+        }
+
+        /**
+         * <p>Returns the text in the search field, for a search entry.</p>
+         *
+         * @return The text searched for.
+         */
+        public String getText() {
+            return myText;
+        }
+
+        /**
+         * <p>Returns whether the search was submitted (with <tt>enter</tt>),
+         * rather than just typed, for a search entry.</p>
+         *
+         * @return Whether the search was submitted.
+         */
+        public boolean isSubmitted() {
+            return myOn;
+        }
+
+        /**
+         * <p>Returns the value the time slider was moved to, for a time
+         * entry.</p>
+         *
+         * @return The slider's value.
+         */
+        public float getValue() {
+            return myValue;
+        }
+    }
+
+    /**
+     * <p>Appends entries to a log file. Entries must be written in frame
+     * order.</p>
+     */
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream myOut;
+        private int myFrame;
+        private long myMillis;
+
+        public Writer(File file) throws IOException {
+            myOut = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file)));
+            myOut.writeInt(MAGIC);
+            myOut.writeByte(VERSION);
+        }
+
+        public void mouse(int frame, long millis, MouseEvent e)
+                throws IOException {
+            begin(Kind.MOUSE, frame, millis, e);
+            myOut.writeShort(e.getX());
+            myOut.writeShort(e.getY());
+            myOut.writeByte(e.getButton());
+            myOut.writeByte(e.getCount());
+        }
+
+        public void key(int frame, long millis, KeyEvent e)
+                throws IOException {
+            begin(Kind.KEY, frame, millis, e);
+            myOut.writeChar(e.getKey());
+            writeVarInt(myOut, e.getKeyCode());
+        }
+
+        public void toggle(int frame, long millis,
+                RestaurantCategory category, boolean on) throws IOException {
+            begin(Kind.TOGGLE, frame, millis, null);
+            myOut.writeByte(RestaurantCategories.all().indexOf(category));
+            myOut.writeBoolean(on);
+        }
+
+        public void search(int frame, long millis, String text,
+                boolean submitted) throws IOException {
+            begin(Kind.SEARCH, frame, millis, null);
+            myOut.writeUTF(text);
+            myOut.writeBoolean(submitted);
+        }
+
+        public void timeline(int frame, long millis, float value)
+                throws IOException {
+            begin(Kind.TIMELINE, frame, millis, null);
+            myOut.writeFloat(value);
+        }
+
+        /**
+         * <p>Marks <code>frame</code> as the last of the session and closes
+         * the file.</p>
+         *
+         * @param frame The last frame.
+         * @param millis The wall clock at <code>frame</code>.
+         *
+         * @throws IOException If the log cannot be written.
+         */
+        public void end(int frame, long millis) throws IOException {
+            begin(Kind.END, frame, millis, null);
+            close();
+        }
+
+        @Override public void close() throws IOException {
+            myOut.close();
+        }
+
+        private void begin(Kind kind, int frame, long millis, Event e)
+                throws IOException {
+            if (frame < myFrame || millis < myMillis) {
+                throw new IllegalArgumentException("Entries must be written"
+                        + " in order.");
+            }
+            myOut.writeByte(kind.ordinal());
+            writeVarInt(myOut, frame - myFrame);
+            writeVarInt(myOut, (int) (millis - myMillis));
+            if (e != null) {
+                myOut.writeByte(e.getAction());
+                myOut.writeByte(e.getModifiers());
+            }
+            myFrame = frame;
+            myMillis = millis;
+        }
+    }
+
+    /**
+     * <p>Reads back every entry of the log in <code>file</code>.</p>
+     *
+     * @param file A log written by a {@link Writer}.
+     *
+     * @throws IOException If the file cannot be read, or is not a complete
+     *      log.
+     *
+     * @return The entries, in order; the last is always of kind
+     *      {@link Kind#END}.
+     */
+    public static List<Entry> read(File file) throws IOException {
+        List<Entry> result = new ArrayList<>();
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() > VERSION) {
+                throw new IOException("Not a recorded session: " + file
+                        + ".");
+            }
+            int frame = 0;
+            long millis = 0;
+            Kind kind;
+            do {
+                kind = Kind.values()[in.readByte()];
+                frame += readVarInt(in);
+                millis += readVarInt(in);
+                result.add(readEntry(in, kind, frame, millis));
+            } while (kind != Kind.END);
+        }
+        catch (EOFException e) {
+            throw new IOException("Truncated recording: " + file + ".", e);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static Entry readEntry(DataInputStream in, Kind kind, int frame,
+            long millis) throws IOException {
+        switch (kind) {
+            case MOUSE: {
+                int action = in.readByte(), modifiers = in.readByte();
+                return new Entry(kind, frame, millis, action, modifiers,
+                        in.readShort(), in.readShort(), in.readByte(),
+                        in.readByte(), (char) 0, 0, null, false, null, 0);
+            }
+            case KEY: {
+                int action = in.readByte(), modifiers = in.readByte();
+                return new Entry(kind, frame, millis, action, modifiers, 0, 0,
+                        0, 0, in.readChar(), readVarInt(in), null, false,
+                        null, 0);
+            }
+            case TOGGLE:
+                return new Entry(kind, frame, millis, 0, 0, 0, 0, 0, 0,
+                        (char) 0, 0,
+                        RestaurantCategories.all().get(in.readByte()),
+                        in.readBoolean(), null, 0);
+            case SEARCH: {
+                String text = in.readUTF();
+                return new Entry(kind, frame, millis, 0, 0, 0, 0, 0, 0,
+                        (char) 0, 0, null, in.readBoolean(), text, 0);
+            }
+            case TIMELINE:
+                return new Entry(kind, frame, millis, 0, 0, 0, 0, 0, 0,
+                        (char) 0, 0, null, false, null, in.readFloat());
+            default:
+                return new Entry(kind, frame, millis, 0, 0, 0, 0, 0, 0,
+                        (char) 0, 0, null, false, null, 0);
+        }
+    }
+
+    private static void writeVarInt(DataOutput out, int value)
+            throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int result = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.replay;
+
+import controlP5.ControlP5;
+import processing.core.PApplet;
+import processing.event.KeyEvent;
+import processing.event.MouseEvent;
+import setvis.RestaurantCategory;
+import setvis.gui.Gui;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * <p>Records a session with the sketch into an {@link InteractionLog}:
+ * every mouse and key event reaching the sketch, every category toggle,
+ * every change to the text searched for and every move of the time slider.
+ * Mouse events over the controls are left out, as the toggles and moves
+ * they cause are recorded directly; replaying the clicks as well would
+ * apply them twice. Likewise, keys typed into the
+ * search field are left out in favor of the text they make, since a replay
+ * never focuses the field and would take them for shortcuts.</p>
+ *
+ * <p>Entries are timed in frames since {@link #start()}, which the sketch
+ * calls once its dataset is loaded, so a replay lines up with the recording
+ * however long loading takes. Input arriving before then is logged at frame
+ * <code>0</code>.</p>
+ *
+ * <p>Only used on the animation thread.</p>
+ */
+public class InteractionRecorder {
+
+    private final PApplet mySketch;
+    private final ControlP5 myControls;
+    private final InteractionLog.Writer myLog;
+    private final File myFile;
+
+    private int myStartFrame = -1;
+    private long myStartMillis;
+    private boolean myFailed;
+
+    /**
+     * <p>Starts recording input to <code>sketch</code> into
+     * <code>file</code>.</p>
+     *
+     * @param sketch The sketch to record.
+     * @param controls The sketch's controls.
+     * @param file The log file to write.
+     *
+     * @throws IOException If <code>file</code> cannot be written.
+     */
+    public InteractionRecorder(PApplet sketch, ControlP5 controls, File file)
+            throws IOException {
+        mySketch = sketch;
+        myControls = controls;
+        myFile = file;
+        myLog = new InteractionLog.Writer(file);
+        mySketch.registerMethod("mouseEvent", this);
+        mySketch.registerMethod("keyEvent", this);
+    }
+
+    public void start() {
+        if (myStartFrame < 0) {
+            myStartFrame = mySketch.frameCount;
+            myStartMillis = mySketch.millis();
+        }
+    }
+
+    // Invoked by the sketch for every mouse event; has to be public
+    public void mouseEvent(MouseEvent e) {
+        if (myFailed || myControls.isMouseOver()) { return; }
+        try {
+            myLog.mouse(frame(), millis(), e);
+        }
+        catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    // Invoked by the sketch for every key event; has to be public
+    public void keyEvent(KeyEvent e) {
+        if (myFailed || Gui.isSearchFocused(myControls)) { return; }
+        try {
+            myLog.key(frame(), millis(), e);
+        }
+        catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    public void toggled(RestaurantCategory category, boolean on) {
+        if (myFailed) { return; }
+        try {
+            myLog.toggle(frame(), millis(), category, on);
+        }
+        catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * <p>Records the text in the search field.</p>
+     *
+     * @param text The text searched for.
+     * @param submitted Whether it was submitted, rather than just typed.
+     */
+    public void searched(String text, boolean submitted) {
+        if (myFailed) { return; }
+        try {
+            myLog.search(frame(), millis(), text, submitted);
+        }
+        catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * <p>Records a move of the time slider.</p>
+     *
+     * @param value The value the slider was moved to.
+     */
+    public void scrubbed(float value) {
+        if (myFailed) { return; }
+        try {
+            myLog.timeline(frame(), millis(), value);
+        }
+        catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    /**
+     * <p>Ends the recording at the current frame.</p>
+     */
+    public void close() {
+        mySketch.unregisterMethod("mouseEvent", this);
+        mySketch.unregisterMethod("keyEvent", this);
+        try {
+            if (myFailed) {
+                myLog.close();
+            }
+            else {
+                myLog.end(frame(), millis());
+            }
+        }
+        catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    private int frame() {
+        return myStartFrame < 0 ? 0 : mySketch.frameCount - myStartFrame;
+    }
+
+    private long millis() {
+        return myStartFrame < 0 ? 0 : mySketch.millis() - myStartMillis;
+    }
+
+    private void fail(IOException e) {
+        System.err.println("Unable to record to " + myFile + ": " + e);
+        myFailed = true;
+        mySketch.unregisterMethod("mouseEvent", this);
+        mySketch.unregisterMethod("keyEvent", this);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Steps through a recorded session frame by frame. Entries come due on
+ * the same frame (counted from the sketch's own call to {@link #start}) as
+ * they were recorded on, whatever the frame rate, so two builds replaying
+ * the same session draw exactly the same frames.</p>
+ *
+ * <p>Only used on the animation thread.</p>
+ */
+public class InteractionReplayer {
+
+    private final List<InteractionLog.Entry> myEntries;
+    private final FrameTimings myTimings = new FrameTimings();
+
+    private int myStartFrame = -1;
+    private int myNext;
+
+    public InteractionReplayer(File file) throws IOException {
+        myEntries = InteractionLog.read(file);
+    }
+
+    public void start(int frame) {
+        if (myStartFrame < 0) {
+            myStartFrame = frame;
+        }
+    }
+
+    public boolean isStarted() {
+        return myStartFrame >= 0;
+    }
+
+    /**
+     * <p>Returns the entries due on <code>frame</code> (or before), other
+     * than the end of the session, and moves past them.</p>
+     *
+     * @param frame The sketch's current frame.
+     *
+     * @return The due entries, in recorded order.
+     */
+    public List<InteractionLog.Entry> due(int frame) {
+        List<InteractionLog.Entry> result = new ArrayList<>();
+        if (!isStarted()) {
+            return result;
+        }
+        while (myNext < myEntries.size()) {
+            InteractionLog.Entry e = myEntries.get(myNext);
+            if (e.getKind() == InteractionLog.Kind.END
+                    || e.getFrame() > frame - myStartFrame) {
+                break;
+            }
+            result.add(e);
+            myNext++;
+        }
+        return result;
+    }
+
+    /**
+     * <p>Returns whether <code>frame</code> is past the last frame of the
+     * session.</p>
+     *
+     * @param frame The sketch's current frame.
+     *
+     * @return Whether the replay is over.
+     */
+    public boolean isFinished(int frame) {
+        return isStarted() && frame - myStartFrame
+                > myEntries.get(myEntries.size() - 1).getFrame();
+    }
+
+    public FrameTimings getTimings() {
+        return myTimings;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.server;
+
+import setvis.metrics.Gauge;
+import setvis.metrics.Meter;
+import setvis.metrics.Metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <p>A bounded, least-recently-used cache of encoded tiles that also
+ * coalesces concurrent requests: while a tile is being rendered, every
+ * other request for it waits on that one rendering rather than starting
+ * its own.</p>
+ *
+ * <p>Hits, misses and coalesced requests are counted under
+ * <tt>tiles.cache</tt> in {@link Metrics}.</p>
+ */
+public class TileCache {
+
+    private static final Meter HITS = Metrics.meter("tiles.cache.hits");
+    private static final Meter MISSES = Metrics.meter("tiles.cache.misses");
+    private static final Meter COALESCED =
+            Metrics.meter("tiles.cache.coalesced");
+
+    private final Map<TileKey, byte[]> myTiles;
+
+    private final ConcurrentMap<TileKey, FutureTask<byte[]>> myInFlight =
+            new ConcurrentHashMap<>();
+
+    public TileCache(final int capacity) {
+        myTiles = new LinkedHashMap<TileKey, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<TileKey, byte[]> eldest) {
+                return size() > capacity;
+            }
+        };
+        Metrics.gauge("tiles.cache.size", new Gauge() {
+            @Override public double value() {
+                return size();
+            }
+        });
+    }
+
+    /**
+     * <p>Returns the cached tile for <code>key</code>, rendering it with
+     * <code>renderer</code> if it is neither cached nor already being
+     * rendered.</p>
+     *
+     * @param key The tile wanted.
+     * @param renderer Renders (and encodes) the tile on a miss.
+     *
+     * @throws ExecutionException If rendering the tile failed.
+     * @throws InterruptedException If interrupted while waiting for another
+     *      request to render the tile.
+     *
+     * @return The encoded tile.
+     */
+    public byte[] get(final TileKey key, final Callable<byte[]> renderer)
+            throws ExecutionException, InterruptedException {
+        byte[] result = cached(key);
+        if (result != null) {
+            HITS.mark();
+            return result;
+        }
+
+        //it may land between the lookup and claiming it, so look again in
+        //the task itself: whoever waits on a claimed task needs it run
+        FutureTask<byte[]> task = new FutureTask<>(new Callable<byte[]>() {
+            @Override public byte[] call() throws Exception {
+                byte[] tile = cached(key);
+                if (tile != null) {
+                    HITS.mark();
+                    return tile;
+                }
+                MISSES.mark();
+                tile = renderer.call();
+                synchronized (myTiles) {
+                    myTiles.put(key, tile);
+                }
+                return tile;
+            }
+        });
+        FutureTask<byte[]> existing = myInFlight.putIfAbsent(key, task);
+
+        if (existing == null) {
+            try {
+                task.run();
+            }
+            finally {
+                myInFlight.remove(key, task);
+            }
+            result = task.get();
+        }
+        else {
+            COALESCED.mark();
+            result = existing.get();
+        }
+        return result;
+    }
+
+    private byte[] cached(TileKey key) {
+        synchronized (myTiles) {
+            return myTiles.get(key);
+        }
+    }
+
+    public void clear() {
+        synchronized (myTiles) {
+            myTiles.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (myTiles) {
+            return myTiles.size();
+        }
+    }
+}
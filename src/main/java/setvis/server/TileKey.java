@@ -0,0 +1,114 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.server;
+
+import setvis.RestaurantCategory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Identifies a single rendered overlay tile: the layer, the standard
+ * <tt>z/x/y</tt> tile address and the categories selected (in the order
+ * they were toggled on, as that determines the order of the rings drawn
+ * around intersections).</p>
+ */
+public final class TileKey {
+
+    public static enum Layer {
+        CURVES, MARKERS, ALL;
+
+        public boolean includesCurves() {
+            return this != MARKERS;
+        }
+
+        public boolean includesMarkers() {
+            return this != CURVES;
+        }
+    }
+
+    private final Layer myLayer;
+    private final int myZoom, myX, myY;
+    private final List<RestaurantCategory> mySelection;
+
+    public TileKey(Layer layer, int zoom, int x, int y,
+            List<RestaurantCategory> selection) {
+        if (zoom < 0 || zoom > 22) {
+            throw new IllegalArgumentException("Zoom out of range: " + zoom
+                    + ".");
+        }
+        if (x < 0 || y < 0 || x >= (1 << zoom) || y >= (1 << zoom)) {
+            throw new IllegalArgumentException("No such tile: " + zoom + "/"
+                    + x + "/" + y + ".");
+        }
+        myLayer = layer;
+        myZoom = zoom;
+        myX = x;
+        myY = y;
+        mySelection = Collections.unmodifiableList(new ArrayList<>(selection));
+    }
+
+    public Layer getLayer() {
+        return myLayer;
+    }
+
+    public int getZoom() {
+        return myZoom;
+    }
+
+    public int getX() {
+        return myX;
+    }
+
+    public int getY() {
+        return myY;
+    }
+
+    public List<RestaurantCategory> getSelection() {
+        return mySelection;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = myLayer.hashCode();
+        result = 31 * result + myZoom;
+        result = 31 * result + myX;
+        result = 31 * result + myY;
+        return 31 * result + mySelection.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        boolean result = (o instanceof TileKey);
+
+        if (result) {
+            TileKey k = (TileKey) o;
+            result = k.myLayer == myLayer && k.myZoom == myZoom
+                    && k.myX == myX && k.myY == myY
+                    && k.mySelection.equals(mySelection);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return myLayer.toString().toLowerCase() + "/" + myZoom + "/" + myX
+                + "/" + myY + mySelection;
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.server;
+
+import setvis.MercatorProjection;
+import setvis.Restaurant;
+import setvis.RestaurantCategory;
+import setvis.RestaurantStore;
+import setvis.SelectionSnapshot;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Renders the curve and marker layers of a single overlay tile with
+ * Java2D, mirroring what {@link setvis.LineSets} draws on screen: smooth
+ * (Catmull-Rom) curves through each selected category and concentric rings
+ * around restaurants where selected categories intersect.</p>
+ *
+ * <p>What tiles share is derived once per version of the store (see
+ * {@link RestaurantStore#getVersion()}): the simplified paths of every
+ * selection asked for (up to {@link #MAX_SELECTIONS} of them), and a grid
+ * bucketing the restaurants by location, so that a tile only visits the
+ * markers near it. Renderers may be shared by any number of worker
+ * threads.</p>
+ */
+public class TileRenderer {
+
+    private static final float CURVE_WEIGHT = 7;
+    private static final float RING_WEIGHT = 5;
+    private static final float MARKER_SIZE = 7;
+
+    //room for the widest ring drawn around a restaurant just off the tile
+    private static final int MARGIN = 40;
+
+    private static final Color MARKER_FILL = new Color(175, 175, 175);
+    private static final Color MARKER_STROKE = new Color(50, 50, 50);
+
+    //selections whose paths are kept before starting over
+    private static final int MAX_SELECTIONS = 256;
+
+    //cells along each side of the marker grid
+    private static final int GRID_RESOLUTION = 256;
+
+    private final RestaurantStore myStore;
+
+    private volatile Prepared myPrepared;
+
+    public TileRenderer(RestaurantStore store) {
+        myStore = store;
+    }
+
+    /**
+     * <p>Renders and PNG-encodes the tile identified by
+     * <code>key</code>.</p>
+     *
+     * @param key A tile.
+     *
+     * @throws IOException If the tile cannot be encoded.
+     *
+     * @return The encoded tile.
+     */
+    public byte[] render(TileKey key) throws IOException {
+        int size = MercatorProjection.TILE_SIZE;
+        BufferedImage image =
+                new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+
+        Prepared prepared = prepare();
+        SelectionSnapshot selection = prepared.getSelection(
+                key.getSelection());
+        Frame frame = new Frame(key);
+
+        if (key.getLayer().includesCurves()) {
+            drawCurves(g, frame, selection);
+        }
+        if (key.getLayer().includesMarkers()) {
+            drawMarkers(g, frame, selection, prepared.getMarkers());
+        }
+        g.dispose();
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", result);
+        return result.toByteArray();
+    }
+
+    private void drawCurves(Graphics2D g, Frame frame,
+            SelectionSnapshot selection) {
+        g.setStroke(new BasicStroke(CURVE_WEIGHT, BasicStroke.CAP_ROUND,
+                BasicStroke.JOIN_ROUND));
+
+        for (RestaurantCategory category : selection.getActiveSelections()
+                .keySet()) {
+            List<Restaurant> ordering =
+                    selection.getPath(category).forZoom(frame.getZoom());
+            int n = ordering.size();
+            if (n < 2) { continue; }
+
+            double[] xs = new double[n + 2], ys = new double[n + 2];
+            double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+            double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+
+            for (int i = 0; i < n; i++) {
+                Restaurant r = ordering.get(i);
+                xs[i + 1] = frame.x(r);
+                ys[i + 1] = frame.y(r);
+                minX = Math.min(minX, xs[i + 1]);
+                maxX = Math.max(maxX, xs[i + 1]);
+                minY = Math.min(minY, ys[i + 1]);
+                maxY = Math.max(maxY, ys[i + 1]);
+            }
+            if (!frame.intersects(minX, minY, maxX, maxY)) { continue; }
+
+            //like curveVertex(..), the end points double as control points
+            xs[0] = xs[1];
+            ys[0] = ys[1];
+            xs[n + 1] = xs[n];
+            ys[n + 1] = ys[n];
+
+            Path2D.Double path = new Path2D.Double();
+            path.moveTo(xs[1], ys[1]);
+            for (int i = 1; i < n; i++) {
+                path.curveTo(
+                        xs[i] + (xs[i + 1] - xs[i - 1]) / 6,
+                        ys[i] + (ys[i + 1] - ys[i - 1]) / 6,
+                        xs[i + 1] - (xs[i + 2] - xs[i]) / 6,
+                        ys[i + 1] - (ys[i + 2] - ys[i]) / 6,
+                        xs[i + 1], ys[i + 1]);
+            }
+            g.setColor(new Color(category.getAssignedColor(), true));
+            g.draw(path);
+        }
+    }
+
+    /**
+     * <p>Returns what is derived from the current version of the store,
+     * deriving it anew if the store has changed since.</p>
+     */
+    private Prepared prepare() {
+        long version = myStore.getVersion();
+        Prepared result = myPrepared;
+        if (result == null || result.myVersion != version) {
+            //a store is loaded before it is served, so rebuilds are rare
+            result = new Prepared(version, new MarkerGrid(
+                    myStore.getRestaurants()));
+            myPrepared = result;
+        }
+        return result;
+    }
+
+    private void drawMarkers(Graphics2D g, Frame frame,
+            SelectionSnapshot selection, MarkerGrid markers) {
+        for (Restaurant r : markers.near(frame)) {
+            double x = frame.x(r), y = frame.y(r);
+            if (!frame.contains(x, y)) { continue; }
+
+            Set<RestaurantCategory> intersections =
+                    selection.getIntersections(r);
+            double ringSize = 13;
+
+            g.setStroke(new BasicStroke(RING_WEIGHT));
+            for (RestaurantCategory category : intersections) {
+                g.setColor(new Color(category.getAssignedColor(), true));
+                g.draw(circle(x, y, ringSize));
+                ringSize += 10;
+            }
+            Ellipse2D dot = circle(x, y, MARKER_SIZE);
+            g.setColor(MARKER_FILL);
+            g.fill(dot);
+            g.setStroke(new BasicStroke(1));
+            g.setColor(MARKER_STROKE);
+            g.draw(dot);
+        }
+    }
+
+    private static Ellipse2D circle(double x, double y, double diameter) {
+        return new Ellipse2D.Double(x - diameter / 2, y - diameter / 2,
+                diameter, diameter);
+    }
+
+    /**
+     * <p>The selections and marker grid of one version of the store.</p>
+     */
+    private final class Prepared {
+
+        private final long myVersion;
+        private final MarkerGrid myMarkers;
+        private final ConcurrentMap<List<RestaurantCategory>,
+                SelectionSnapshot> mySelections = new ConcurrentHashMap<>();
+
+        Prepared(long version, MarkerGrid markers) {
+            myVersion = version;
+            myMarkers = markers;
+        }
+
+        MarkerGrid getMarkers() {
+            return myMarkers;
+        }
+
+        /**
+         * <p>Returns the snapshot of <code>categories</code>, toggled on
+         * in order, with every path already simplified.</p>
+         */
+        SelectionSnapshot getSelection(List<RestaurantCategory> categories) {
+            SelectionSnapshot result = mySelections.get(categories);
+            if (result == null) {
+                result = SelectionSnapshot.EMPTY;
+                for (RestaurantCategory category : categories) {
+                    result = result.with(category,
+                            myStore.getOrdering(category));
+                }
+                result.precomputePaths();
+                if (mySelections.size() >= MAX_SELECTIONS) {
+                    mySelections.clear();
+                }
+                SelectionSnapshot existing =
+                        mySelections.putIfAbsent(categories, result);
+                if (existing != null) {
+                    result = existing;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * <p>Restaurants bucketed over a square grid in
+     * {@link MercatorProjection} world coordinates just covering them, each
+     * cell's restaurants stored back to back (as their positions in the
+     * store's layout, so that overlapping markers are drawn in the same
+     * order however they are found).</p>
+     */
+    private static final class MarkerGrid {
+
+        private final double myMinX, myMinY, myCellSize;
+        private final int[] myCellStart, myCellRestaurants;
+        private final Restaurant[] myRestaurants;
+
+        MarkerGrid(Collection<Restaurant> restaurants) {
+            double minX = 1, minY = 1, maxX = 0, maxY = 0;
+            for (Restaurant r : restaurants) {
+                double x = worldX(r), y = worldY(r);
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+            myMinX = minX;
+            myMinY = minY;
+            myCellSize = Math.max(Math.max(maxX - minX, maxY - minY), 1e-9)
+                    / GRID_RESOLUTION;
+
+            int[] cells = new int[restaurants.size()];
+            myCellStart = new int[GRID_RESOLUTION * GRID_RESOLUTION + 1];
+            int i = 0;
+            for (Restaurant r : restaurants) {
+                cells[i] = cell(column(worldX(r)), row(worldY(r)));
+                myCellStart[cells[i] + 1]++;
+                i++;
+            }
+            for (int c = 0; c < GRID_RESOLUTION * GRID_RESOLUTION; c++) {
+                myCellStart[c + 1] += myCellStart[c];
+            }
+            int[] next = Arrays.copyOf(myCellStart,
+                    myCellStart.length - 1);
+            myCellRestaurants = new int[cells.length];
+            for (i = 0; i < cells.length; i++) {
+                myCellRestaurants[next[cells[i]]++] = i;
+            }
+            myRestaurants = restaurants.toArray(
+                    new Restaurant[restaurants.size()]);
+        }
+
+        /**
+         * <p>Returns the restaurants in every cell overlapping
+         * <code>frame</code>, margin included (and possibly a few
+         * more).</p>
+         */
+        List<Restaurant> near(Frame frame) {
+            double margin = MARGIN / frame.getWorldSize();
+            int column0 = column(frame.getLeft() - margin);
+            int column1 = column(frame.getRight() + margin);
+            int row0 = row(frame.getTop() - margin);
+            int row1 = row(frame.getBottom() + margin);
+
+            int[] found = new int[16];
+            int count = 0;
+            for (int row = row0; row <= row1; row++) {
+                for (int k = myCellStart[cell(column0, row)];
+                        k < myCellStart[cell(column1, row) + 1]; k++) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, 2 * count);
+                    }
+                    found[count++] = myCellRestaurants[k];
+                }
+            }
+            Arrays.sort(found, 0, count);
+
+            List<Restaurant> result = new ArrayList<>(count);
+            for (int k = 0; k < count; k++) {
+                result.add(myRestaurants[found[k]]);
+            }
+            return result;
+        }
+
+        private int column(double worldX) {
+            return clamp((worldX - myMinX) / myCellSize);
+        }
+
+        private int row(double worldY) {
+            return clamp((worldY - myMinY) / myCellSize);
+        }
+
+        private static int cell(int column, int row) {
+            return row * GRID_RESOLUTION + column;
+        }
+
+        private static int clamp(double cell) {
+            return (int) Math.max(0, Math.min(GRID_RESOLUTION - 1,
+                    Math.floor(cell)));
+        }
+    }
+
+    private static double worldX(Restaurant r) {
+        return MercatorProjection.worldX(r.getLocation().getLon());
+    }
+
+    private static double worldY(Restaurant r) {
+        return MercatorProjection.worldY(r.getLocation().getLat());
+    }
+
+    /**
+     * <p>Maps locations into the pixel space of one tile.</p>
+     */
+    private static final class Frame {
+
+        private final int myZoom;
+        private final double myWorldSize, myOffsetX, myOffsetY;
+
+        Frame(TileKey key) {
+            myZoom = key.getZoom();
+            myWorldSize = MercatorProjection.worldSize(key.getZoom());
+            myOffsetX = (double) key.getX() * MercatorProjection.TILE_SIZE;
+            myOffsetY = (double) key.getY() * MercatorProjection.TILE_SIZE;
+        }
+
+        int getZoom() {
+            return myZoom;
+        }
+
+        double getWorldSize() {
+            return myWorldSize;
+        }
+
+        double getLeft() {
+            return myOffsetX / myWorldSize;
+        }
+
+        double getTop() {
+            return myOffsetY / myWorldSize;
+        }
+
+        double getRight() {
+            return (myOffsetX + MercatorProjection.TILE_SIZE) / myWorldSize;
+        }
+
+        double getBottom() {
+            return (myOffsetY + MercatorProjection.TILE_SIZE) / myWorldSize;
+        }
+
+        double x(Restaurant r) {
+            return worldX(r) * myWorldSize - myOffsetX;
+        }
+
+        double y(Restaurant r) {
+            return worldY(r) * myWorldSize - myOffsetY;
+        }
+
+        boolean contains(double x, double y) {
+            return intersects(x, y, x, y);
+        }
+
+        boolean intersects(double minX, double minY, double maxX,
+                double maxY) {
+            int size = MercatorProjection.TILE_SIZE;
+            return maxX >= -MARGIN && minX <= size + MARGIN
+                    && maxY >= -MARGIN && minY <= size + MARGIN;
+        }
+    }
+}
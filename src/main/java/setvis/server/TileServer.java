@@ -0,0 +1,210 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import setvis.RestaurantCategories;
+import setvis.RestaurantCategory;
+import setvis.RestaurantStore;
+import setvis.Threads;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Serves LineSets overlay tiles over <tt>HTTP</tt> so they can be layered
+ * on top of any web map, without a desktop sketch per viewer. Tiles are
+ * addressed as</p>
+ *
+ * <pre>
+ *   /tiles/{curves|markers|all}/{z}/{x}/{y}.png?categories=american,four
+ * </pre>
+ *
+ * <p>where <code>categories</code> lists the selected categories (see
+ * {@link RestaurantCategories#forName(String)}) in the order they were
+ * toggled on. Requests are handled on a fixed pool of worker threads that
+ * share one {@link RestaurantStore} and one {@link TileCache}.</p>
+ */
+public class TileServer {
+
+    private static final Pattern TILE_PATH = Pattern.compile(
+            "/tiles/(curves|markers|all)/(\\d+)/(\\d+)/(\\d+)\\.png");
+
+    private final HttpServer myServer;
+    private final ExecutorService myWorkers;
+    private final TileRenderer myRenderer;
+    private final TileCache myCache;
+
+    /**
+     * <p>Creates a server for the restaurants (and precomputed orderings) in
+     * <code>store</code>, bound to <code>port</code> on the loopback
+     * interface. Use port <code>0</code> to pick any free port.</p>
+     *
+     * @param store A loaded store, with orderings computed.
+     * @param port The port to listen on.
+     * @param workers The number of rendering threads.
+     * @param cacheCapacity The number of encoded tiles to keep.
+     *
+     * @throws IOException If the port cannot be bound.
+     */
+    public TileServer(RestaurantStore store, int port, int workers,
+            int cacheCapacity) throws IOException {
+        myRenderer = new TileRenderer(store);
+        myCache = new TileCache(cacheCapacity);
+        myWorkers = Executors.newFixedThreadPool(workers,
+                Threads.daemonFactory("tile-worker"));
+
+        myServer = HttpServer.create(new InetSocketAddress(
+                "127.0.0.1", port), 0);
+        myServer.setExecutor(myWorkers);
+        myServer.createContext("/tiles/", new HttpHandler() {
+            @Override public void handle(HttpExchange exchange)
+                    throws IOException {
+                handleTile(exchange);
+            }
+        });
+    }
+
+    public void start() {
+        myServer.start();
+    }
+
+    public void stop() {
+        myServer.stop(0);
+        myWorkers.shutdown();
+        try {
+            myWorkers.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * <p>Returns the port actually bound (useful after asking for port
+     * <code>0</code>).</p>
+     *
+     * @return The port.
+     */
+    public int getPort() {
+        return myServer.getAddress().getPort();
+    }
+
+    public TileCache getCache() {
+        return myCache;
+    }
+
+    private void handleTile(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "Only GET is supported.");
+                return;
+            }
+            final TileKey key;
+            try {
+                key = parseKey(exchange);
+            }
+            catch (IllegalArgumentException e) {
+                respond(exchange, 400, e.getMessage());
+                return;
+            }
+            if (key == null) {
+                respond(exchange, 404, "No such tile.");
+                return;
+            }
+            byte[] tile = myCache.get(key, new Callable<byte[]>() {
+                @Override public byte[] call() throws IOException {
+                    return myRenderer.render(key);
+                }
+            });
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.getResponseHeaders().set("Cache-Control",
+                    "public, max-age=300");
+            exchange.sendResponseHeaders(200, tile.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(tile);
+            }
+        }
+        catch (ExecutionException e) {
+            respond(exchange, 500, "Unable to render tile: "
+                    + e.getCause().getMessage());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "Interrupted.");
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private TileKey parseKey(HttpExchange exchange) {
+        Matcher m = TILE_PATH.matcher(exchange.getRequestURI().getPath());
+        if (!m.matches()) { return null; }
+
+        List<RestaurantCategory> selection = new ArrayList<>();
+        String query = exchange.getRequestURI().getQuery();
+
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (!parameter.startsWith("categories=")) { continue; }
+
+                for (String name : parameter.substring(11).split(",")) {
+                    if (name.isEmpty()) { continue; }
+                    RestaurantCategory category =
+                            RestaurantCategories.forName(name);
+                    if (!selection.contains(category)) {
+                        selection.add(category);
+                    }
+                }
+            }
+        }
+        try {
+            return new TileKey(TileKey.Layer.valueOf(m.group(1).toUpperCase()),
+                    Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)),
+                    Integer.parseInt(m.group(4)), selection);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed tile address.");
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status,
+            String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis;
+
+import org.junit.Test;
+import setvis.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Checks that orderings grown from empty are measured in the frame
+ * {@link RestaurantOrderings#compute} would use.</p>
+ */
+public class ProjectedOrderingTest {
+
+    private static final double KM_PER_DEGREE = Math.toRadians(1) * 6371.0;
+
+    @Test public void insertFramesAroundFirstRestaurant() {
+        ProjectedOrdering ordering = new ProjectedOrdering(
+                Collections.<Restaurant>emptyList());
+        ordering.insert(restaurant("a", 47.6f, -122.30f));
+        ordering.insert(restaurant("b", 47.6f, -122.31f));
+
+        double expected = 0.01 * KM_PER_DEGREE
+                * Math.cos(Math.toRadians(47.6));
+        assertEquals(expected, ordering.length(), 1e-3);
+    }
+
+    @Test public void insertAllMeasuresLikeComputed() {
+        for (List<Restaurant> members : bundledCategories()) {
+            List<Restaurant> computed = RestaurantOrderings.compute(members);
+            ProjectedOrdering ordering = new ProjectedOrdering(
+                    Collections.<Restaurant>emptyList());
+            ordering.insertAll(computed);
+
+            assertEquals(computed.size(), ordering.size());
+            assertEquals(new ProjectedOrdering(ordering.getRestaurants())
+                    .length(), ordering.length(), 1e-3);
+        }
+    }
+
+    @Test public void storeRefillsEmptyCategoryInItsOwnFrame() {
+        List<Restaurant> restaurants = bundled();
+        //the most recently created store publishes the gauges
+        RestaurantStore store = new RestaurantStore();
+        store.load(Collections.<Restaurant>emptyList());
+        store.apply(new DatasetDelta(restaurants,
+                Collections.<Restaurant>emptyList(),
+                Collections.<DatasetDelta.Update>emptyList()));
+
+        for (RestaurantCategory category : store.getCategories()) {
+            List<Restaurant> ordering = store.getOrdering(category);
+            double km = Metrics.snapshot().get("ordering."
+                    + category.toString().toLowerCase() + ".km")
+                    .doubleValue();
+            assertEquals(new ProjectedOrdering(ordering).length(), km, 1e-3);
+        }
+    }
+
+    private static List<Restaurant> bundled() {
+        RestaurantStore store = new RestaurantStore();
+        store.load(new RestaurantParser().parseBundled());
+        return new ArrayList<>(store.getRestaurants());
+    }
+
+    private static List<List<Restaurant>> bundledCategories() {
+        RestaurantStore store = new RestaurantStore();
+        store.load(new RestaurantParser().parseBundled());
+        List<List<Restaurant>> result = new ArrayList<>();
+        for (RestaurantCategory category : store.getCategories()) {
+            result.add(store.getOrdering(category));
+        }
+        return result;
+    }
+
+    private static Restaurant restaurant(String id, float latitude,
+            float longitude) {
+        return new Restaurant.RestaurantBuilder(id)
+                .id(id)
+                .type(Restaurant.RestaurantType.values()[0])
+                .rating(Restaurant.RestaurantRating.FOUR)
+                .reviewCount(Restaurant.RestaurantReviewCount.SMALL_COUNT)
+                .location(latitude, longitude)
+                .build();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * This file is part of 'LineSets', a final project for cpsc804: Data
+ * Visualization.
+ *
+ * LineSets is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * LineSets is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with LineSets. If not, see http://www.gnu.org/licenses/.
+ */
+package setvis.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import setvis.MercatorProjection;
+import setvis.RestaurantParser;
+import setvis.RestaurantStore;
+import setvis.metrics.Meter;
+import setvis.metrics.Metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * <p>Requests tiles of the bundled dataset from a {@link TileServer} on a
+ * free loopback port.</p>
+ */
+public class TileServerTest {
+
+    private static final byte[] PNG_SIGNATURE =
+            { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+
+    private static final Meter MISSES = Metrics.meter("tiles.cache.misses");
+    private static final Meter HITS = Metrics.meter("tiles.cache.hits");
+
+    private TileServer myServer;
+
+    @Before public void startServer() throws IOException {
+        RestaurantStore store = new RestaurantStore();
+        store.load(new RestaurantParser().parseBundled());
+        store.computeOrderings();
+
+        myServer = new TileServer(store, 0, 4, 64);
+        myServer.start();
+    }
+
+    @After public void stopServer() {
+        myServer.stop();
+    }
+
+    @Test public void servesPng() throws IOException {
+        Response response = get(tile("all", 13) + "?categories=american,four");
+
+        assertEquals(200, response.status);
+        assertEquals("image/png", response.contentType);
+        assertArrayEquals(PNG_SIGNATURE,
+                Arrays.copyOf(response.body, PNG_SIGNATURE.length));
+    }
+
+    @Test public void servesRepeatsFromCache() throws IOException {
+        String path = tile("curves", 14) + "?categories=italian";
+        Response first = get(path);
+        long misses = MISSES.getCount(), hits = HITS.getCount();
+        Response second = get(path);
+
+        assertEquals(200, second.status);
+        assertArrayEquals(first.body, second.body);
+        assertEquals(misses, MISSES.getCount());
+        assertEquals(hits + 1, HITS.getCount());
+        assertEquals(1, myServer.getCache().size());
+    }
+
+    @Test public void rendersConcurrentRequestsOnce() throws Exception {
+        final String path = tile("markers", 15) + "?categories=asian,three";
+        final CountDownLatch start = new CountDownLatch(1);
+        long misses = MISSES.getCount();
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        List<Future<Response>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            responses.add(clients.submit(new Callable<Response>() {
+                @Override public Response call() throws Exception {
+                    start.await();
+                    return get(path);
+                }
+            }));
+        }
+        start.countDown();
+        byte[] body = responses.get(0).get().body;
+        for (Future<Response> response : responses) {
+            assertEquals(200, response.get().status);
+            assertArrayEquals(body, response.get().body);
+        }
+        clients.shutdown();
+
+        assertEquals(misses + 1, MISSES.getCount());
+        assertEquals(1, myServer.getCache().size());
+    }
+
+    @Test public void rejectsBadPaths() throws IOException {
+        assertEquals(404, get("/tiles/everything/13/1312/2860.png").status);
+        assertEquals(404, get("/tiles/all/13/1312.png").status);
+        assertEquals(400, get("/tiles/all/13/99999/2860.png").status);
+        assertEquals(400, get("/tiles/all/99999999999/0/0.png").status);
+        assertEquals(400, get(tile("all", 13) + "?categories=bogus").status);
+        assertEquals(0, myServer.getCache().size());
+    }
+
+    /**
+     * <p>Returns the path of the tile of <code>layer</code> over downtown
+     * Seattle at <code>zoom</code>.</p>
+     */
+    private static String tile(String layer, int zoom) {
+        int tiles = 1 << zoom;
+        int x = (int) (MercatorProjection.worldX(-122.337) * tiles);
+        int y = (int) (MercatorProjection.worldY(47.613) * tiles);
+        return "/tiles/" + layer + "/" + zoom + "/" + x + "/" + y + ".png";
+    }
+
+    private Response get(String path) throws IOException {
+        URL url = new URL("http://127.0.0.1:" + myServer.getPort() + path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            Response result = new Response();
+            result.status = connection.getResponseCode();
+            result.contentType = connection.getContentType();
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = result.status < 400
+                    ? connection.getInputStream()
+                    : connection.getErrorStream()) {
+                byte[] buffer = new byte[8192];
+                for (int n; (n = in.read(buffer)) > 0; ) {
+                    body.write(buffer, 0, n);
+                }
+            }
+            result.body = body.toByteArray();
+            return result;
+        }
+        finally {
+            connection.disconnect();
+        }
+    }
+
+    private static final class Response {
+        int status;
+        String contentType;
+        byte[] body;
+    }
+}